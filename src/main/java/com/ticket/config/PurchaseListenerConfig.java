@@ -0,0 +1,83 @@
+package com.ticket.config;
+
+import com.ticket.consumer.TicketPurchaseBatchConsumer;
+import com.ticket.consumer.TicketPurchaseConsumer;
+import com.ticket.dto.TicketPurchaseMessage;
+import com.ticket.util.PurchaseShardRouter;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * 分片隊列監聽器
+ * 每個分片註冊一個並發數為 1 的容器，搭配 single-active-consumer，
+ * 同一票券的訂單在整個集群內只由一個消費者依序處理，不再有樂觀鎖衝突。
+ */
+@Configuration
+public class PurchaseListenerConfig implements RabbitListenerConfigurer {
+
+    private final PurchaseShardRouter purchaseShardRouter;
+    private final MessageConverter messageConverter;
+    private final ObjectProvider<TicketPurchaseConsumer> consumer;
+    private final ObjectProvider<TicketPurchaseBatchConsumer> batchConsumer;
+    private final SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory;
+    private final SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory;
+
+    public PurchaseListenerConfig(PurchaseShardRouter purchaseShardRouter,
+                                  MessageConverter messageConverter,
+                                  ObjectProvider<TicketPurchaseConsumer> consumer,
+                                  ObjectProvider<TicketPurchaseBatchConsumer> batchConsumer,
+                                  SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory,
+                                  SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory) {
+        this.purchaseShardRouter = purchaseShardRouter;
+        this.messageConverter = messageConverter;
+        this.consumer = consumer;
+        this.batchConsumer = batchConsumer;
+        this.rabbitListenerContainerFactory = rabbitListenerContainerFactory;
+        this.batchRabbitListenerContainerFactory = batchRabbitListenerContainerFactory;
+    }
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        TicketPurchaseBatchConsumer batch = batchConsumer.getIfAvailable();
+        TicketPurchaseConsumer single = consumer.getIfAvailable();
+
+        for (int shard = 0; shard < purchaseShardRouter.shardCount(); shard++) {
+            SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+            endpoint.setId("ticket-purchase-shard-" + shard);
+            endpoint.setQueueNames(PurchaseShardRouter.queueName(shard));
+            endpoint.setConcurrency("1");
+
+            if (batch != null) {
+                endpoint.setBatchListener(true);
+                endpoint.setMessageListener(new MessageListener() {
+                    @Override
+                    public void onMessage(Message message) {
+                        batch.processPurchases(List.of(convert(message)));
+                    }
+
+                    @Override
+                    public void onMessageBatch(List<Message> messages) {
+                        batch.processPurchases(messages.stream().map(PurchaseListenerConfig.this::convert).toList());
+                    }
+                });
+                registrar.registerEndpoint(endpoint, batchRabbitListenerContainerFactory);
+            } else if (single != null) {
+                endpoint.setMessageListener(message -> single.processPurchase(convert(message)));
+                registrar.registerEndpoint(endpoint, rabbitListenerContainerFactory);
+            }
+        }
+    }
+
+    private TicketPurchaseMessage convert(Message message) {
+        return (TicketPurchaseMessage) messageConverter.fromMessage(message);
+    }
+}
@@ -1,28 +1,44 @@
 package com.ticket.config;
 
 import org.springframework.amqp.core.*;
+import com.ticket.util.PurchaseShardRouter;
+import com.ticket.util.TicketMessageConverter;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 public class RabbitMQConfig {
     
-    // 消息轉換器 - 必須！
+    @Value("${ticket.mq.codec:binary}")
+    private String codec;
+    
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+    
+    // 消息轉換器 - 必須！binary 為定長二進位編碼，json 方便除錯時直接在管理界面查看
     @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public MessageConverter messageConverter() {
+        if ("json".equalsIgnoreCase(codec)) {
+            return new Jackson2JsonMessageConverter();
+        }
+        return new TicketMessageConverter();
     }
     
     // 配置 RabbitTemplate
     @Bean
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
-        template.setMessageConverter(jsonMessageConverter());
+        template.setMessageConverter(messageConverter());
         return template;
     }
     
@@ -31,19 +47,64 @@ public class RabbitMQConfig {
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         factory.setConnectionFactory(connectionFactory);
-        factory.setMessageConverter(jsonMessageConverter());
+        factory.setMessageConverter(messageConverter());
         factory.setConcurrentConsumers(3);  // 併發消費者數量
         factory.setMaxConcurrentConsumers(10);
+        applyVirtualThreads(factory, "rabbit-");
         return factory;
     }
     
+    // 批量監聽器工廠：累積到 batch-size 筆或等待 linger-ms 無新消息即交付，整批處理完才 ack
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            @Value("${ticket.consumer.batch.size:50}") int batchSize,
+            @Value("${ticket.consumer.batch.linger-ms:50}") long lingerMs) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter());
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(lingerMs);
+        factory.setPrefetchCount(batchSize);
+        factory.setConcurrentConsumers(3);
+        factory.setMaxConcurrentConsumers(10);
+        applyVirtualThreads(factory, "rabbit-batch-");
+        return factory;
+    }
+    
+    // 虛擬執行緒模式：監聽器跑在虛擬執行緒上，DB 併發仍由 Hikari 連線池限制
+    private void applyVirtualThreads(SimpleRabbitListenerContainerFactory factory, String threadNamePrefix) {
+        if (virtualThreads) {
+            factory.setTaskExecutor(new VirtualThreadTaskExecutor(threadNamePrefix));
+        }
+    }
+    
     // 交換機
     @Bean
     public DirectExchange ticketExchange() {
-        return new DirectExchange("ticket.purchase.exchange", true, false);
+        return new DirectExchange(PurchaseShardRouter.EXCHANGE, true, false);
+    }
+    
+    // 分片隊列：依 ticketId 路由，每個分片只有一個活躍消費者，同票券的訂單依序處理
+    @Bean
+    public Declarables ticketShardQueues(DirectExchange ticketExchange, PurchaseShardRouter purchaseShardRouter) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (int shard = 0; shard < purchaseShardRouter.shardCount(); shard++) {
+            Queue queue = QueueBuilder.durable(PurchaseShardRouter.queueName(shard))
+                    .singleActiveConsumer()
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue)
+                    .to(ticketExchange)
+                    .with(PurchaseShardRouter.routingKeyOf(shard)));
+        }
+        return new Declarables(declarables);
     }
     
-    // 隊列
+    // 舊版單一隊列（保留以排空升級前的消息）
     @Bean
     public Queue ticketQueue() {
         return new Queue("ticket.purchase.queue", true, false, false);
@@ -1,9 +1,14 @@
 package com.ticket.config;
 
+import com.ticket.service.OrderStatusService;
+import com.ticket.service.RedisService;
+import com.ticket.service.StockShadowService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -22,4 +27,16 @@ public class RedisConfig {
         
         return template;
     }
+
+    // 訂閱庫存事件，同步各節點的本地庫存影子；訂閱訂單結果，喚醒本節點的長輪詢
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       StockShadowService stockShadowService,
+                                                                       OrderStatusService orderStatusService) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(stockShadowService, new ChannelTopic(RedisService.STOCK_EVENTS_CHANNEL));
+        container.addMessageListener(orderStatusService, new ChannelTopic(OrderStatusService.ORDER_STATUS_CHANNEL));
+        return container;
+    }
 }
\ No newline at end of file
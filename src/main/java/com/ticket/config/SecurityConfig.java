@@ -1,7 +1,11 @@
 package com.ticket.config;
 
 import com.ticket.filter.JwtAuthenticationFilter;
+import com.ticket.filter.RateLimitFilter;
+import com.ticket.service.RateLimitService;
 import com.ticket.util.JwtUtil;
+import jakarta.servlet.DispatcherType;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -17,9 +21,14 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 public class SecurityConfig {
 
     private final JwtUtil jwtUtil;
+    private final RateLimitService rateLimitService;
 
-    public SecurityConfig(JwtUtil jwtUtil) {
+    @Value("${ticket.rate-limit.enabled:false}")
+    private boolean rateLimitEnabled;
+
+    public SecurityConfig(JwtUtil jwtUtil, RateLimitService rateLimitService) {
         this.jwtUtil = jwtUtil;
+        this.rateLimitService = rateLimitService;
     }
 
     @Bean
@@ -40,7 +49,10 @@ public class SecurityConfig {
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
             )
             .authorizeHttpRequests(auth -> auth
+                // 長輪詢完成後的 async dispatch 不再帶 JWT，授權已在原始請求完成
+                .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
                 .requestMatchers("/api/auth/**").permitAll()
+                .requestMatchers("/actuator/health/**").permitAll()
                 .requestMatchers("/api/tickets/orders/**").authenticated()
                 .anyRequest().authenticated()
             )
@@ -48,6 +60,11 @@ public class SecurityConfig {
             .formLogin(form -> form.disable())
             .httpBasic(basic -> basic.disable());
 
+        // 限流需要 JWT 解析出的用戶；不註冊成 bean，避免再被加進 servlet filter 鏈
+        if (rateLimitEnabled) {
+            http.addFilterAfter(new RateLimitFilter(rateLimitService), JwtAuthenticationFilter.class);
+        }
+
         return http.build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package com.ticket.consumer;
+
+import com.ticket.dto.TicketPurchaseMessage;
+import com.ticket.service.InventoryEngine;
+import com.ticket.service.OrderBatchService;
+import com.ticket.service.OrderIdempotencyService;
+import com.ticket.service.OrderStatusService;
+import com.ticket.service.OrderStatusService.OrderStatusUpdate;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量消費者（ticket.consumer.batch.enabled=true 時啟用）
+ * 一次拉取多筆消息，同票券合併扣庫存，整批提交後才 ack
+ */
+@Component
+@ConditionalOnProperty(name = "ticket.consumer.batch.enabled", havingValue = "true")
+public class TicketPurchaseBatchConsumer {
+
+    private final OrderBatchService orderBatchService;
+    private final OrderIdempotencyService orderIdempotencyService;
+    private final InventoryEngine inventoryEngine;
+    private final OrderStatusService orderStatusService;
+
+    public TicketPurchaseBatchConsumer(OrderBatchService orderBatchService, OrderIdempotencyService orderIdempotencyService,
+                                       InventoryEngine inventoryEngine, OrderStatusService orderStatusService) {
+        this.orderBatchService = orderBatchService;
+        this.orderIdempotencyService = orderIdempotencyService;
+        this.inventoryEngine = inventoryEngine;
+        this.orderStatusService = orderStatusService;
+    }
+
+    // 分片隊列由 PurchaseListenerConfig 註冊；這裡只排空升級前舊版單一隊列裡的消息
+    @RabbitListener(queues = "ticket.purchase.queue", containerFactory = "batchRabbitListenerContainerFactory")
+    public void processPurchases(List<TicketPurchaseMessage> messages) {
+        // 重複投遞的消息一次 MGET 過濾掉，不碰資料庫
+        List<TicketPurchaseMessage> pending = orderIdempotencyService.filterUnprocessed(messages);
+        if (pending.size() < messages.size()) {
+            System.out.println("⏭️ 略過重複消息: " + (messages.size() - pending.size()) + " 筆");
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        pending.forEach(message -> System.out.println("開始處理訂單: " + message.getOrderSn()));
+
+        OrderBatchService.BatchResult result;
+        try {
+            result = orderBatchService.applyBatch(pending);
+        } catch (Exception e) {
+            // 整批失敗（例如重複訂單號），交易已回滾，降級為逐筆處理，避免一筆壞消息拖垮整批
+            System.out.println("批次處理失敗，改為逐筆處理: " + e.getMessage());
+            pending.forEach(this::processSingle);
+            return;
+        }
+
+        // 交易已提交：之後的歸還或推送失敗只影響單筆，不能再重跑資料庫寫入
+        List<OrderStatusUpdate> updates = new ArrayList<>(pending.size());
+        for (TicketPurchaseMessage message : result.rejected()) {
+            releaseStock(message);
+            updates.add(OrderStatusUpdate.failed(message, "庫存不足"));
+            System.out.println("訂單處理失敗 - 庫存不足: " + message.getOrderSn());
+        }
+        for (TicketPurchaseMessage message : result.accepted()) {
+            updates.add(OrderStatusUpdate.paid(message));
+            System.out.println("訂單處理成功: " + message.getOrderSn());
+        }
+        orderIdempotencyService.markProcessed(pending.stream().map(TicketPurchaseMessage::getOrderSn).toList());
+        orderStatusService.publish(updates);
+    }
+
+    private void processSingle(TicketPurchaseMessage message) {
+        OrderBatchService.BatchResult result;
+        try {
+            result = orderBatchService.applyBatch(List.of(message));
+        } catch (DataIntegrityViolationException e) {
+            // 訂單號已存在：之前的投遞已提交，只是冪等標記沒寫上
+            System.out.println("⏭️ 訂單已存在，略過: " + message.getOrderSn());
+            orderIdempotencyService.markProcessed(List.of(message.getOrderSn()));
+            return;
+        } catch (Exception e) {
+            releaseStock(message);
+            try {
+                orderBatchService.saveFailedOrder(message, "系統錯誤: " + e.getMessage());
+            } catch (Exception saveError) {
+                System.err.println("💥 創建失敗訂單異常: " + saveError.getMessage());
+            }
+            orderStatusService.publish(List.of(OrderStatusUpdate.failed(message, "系統錯誤")));
+            orderIdempotencyService.markProcessed(List.of(message.getOrderSn()));
+            System.out.println("訂單處理失敗 - 系統錯誤: " + message.getOrderSn() + ", 錯誤: " + e.getMessage());
+            return;
+        }
+
+        // 交易已提交，結果以資料庫為準
+        if (result.rejected().isEmpty()) {
+            orderStatusService.publish(List.of(OrderStatusUpdate.paid(message)));
+            System.out.println("訂單處理成功: " + message.getOrderSn());
+        } else {
+            releaseStock(message);
+            orderStatusService.publish(List.of(OrderStatusUpdate.failed(message, "庫存不足")));
+            System.out.println("訂單處理失敗 - 庫存不足: " + message.getOrderSn());
+        }
+        orderIdempotencyService.markProcessed(List.of(message.getOrderSn()));
+    }
+
+    /**
+     * 歸還預扣庫存；失敗只記錄，訂單結果照常推送（Redis 庫存偏低的部分由對帳修正）
+     */
+    private void releaseStock(TicketPurchaseMessage message) {
+        try {
+            inventoryEngine.release(message.getOrderSn(), message.getTicketId(), message.getUserId(), message.getQuantity());
+        } catch (Exception e) {
+            System.err.println("💥 歸還庫存失敗: " + message.getOrderSn() + ", 錯誤: " + e.getMessage());
+        }
+    }
+}
@@ -1,99 +1,102 @@
 package com.ticket.consumer;
 
 import com.ticket.dto.TicketPurchaseMessage;
-import com.ticket.entity.Ticket;
-import com.ticket.entity.Order;
-import com.ticket.repository.TicketRepository;
-import com.ticket.repository.OrderRepository;
-import com.ticket.service.RedisService;
+import com.ticket.service.InventoryEngine;
+import com.ticket.service.OrderBatchService;
+import com.ticket.service.OrderIdempotencyService;
+import com.ticket.service.OrderStatusService;
+import com.ticket.service.OrderStatusService.OrderStatusUpdate;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
+import java.util.List;
 
 @Component
+@ConditionalOnProperty(name = "ticket.consumer.batch.enabled", havingValue = "false", matchIfMissing = true)
 public class TicketPurchaseConsumer {
-    
-    private final TicketRepository ticketRepository;
-    private final OrderRepository orderRepository;
-    private final RedisService redisService;
-    
-    public TicketPurchaseConsumer(TicketRepository ticketRepository,  OrderRepository orderRepository, RedisService redisService) {
-        this.ticketRepository = ticketRepository;
-        this.orderRepository = orderRepository;
-        this.redisService = redisService;
+
+    private final OrderBatchService orderBatchService;
+    private final OrderIdempotencyService orderIdempotencyService;
+    private final InventoryEngine inventoryEngine;
+    private final OrderStatusService orderStatusService;
+
+    public TicketPurchaseConsumer(OrderBatchService orderBatchService, OrderIdempotencyService orderIdempotencyService,
+                                  InventoryEngine inventoryEngine, OrderStatusService orderStatusService) {
+        this.orderBatchService = orderBatchService;
+        this.orderIdempotencyService = orderIdempotencyService;
+        this.inventoryEngine = inventoryEngine;
+        this.orderStatusService = orderStatusService;
     }
-    
+
+    // 分片隊列由 PurchaseListenerConfig 註冊；這裡只排空升級前舊版單一隊列裡的消息
     @RabbitListener(queues = "ticket.purchase.queue")
     public void processPurchase(TicketPurchaseMessage message) {
+        // 0. 重複投遞直接略過，不碰資料庫
+        if (orderIdempotencyService.isProcessed(message.getOrderSn())) {
+            System.out.println("⏭️ 重複消息，略過: " + message.getOrderSn());
+            return;
+        }
+
         System.out.println("開始處理訂單: " + message.getOrderSn());
-        
+
+        // 1. 條件式扣庫存 + 寫訂單，同一交易（庫存不足時寫入失敗訂單）
+        OrderBatchService.BatchResult result;
         try {
-            // 1. 檢查票券是否存在
-            Ticket ticket = ticketRepository.findById(message.getTicketId())
-                    .orElseThrow(() -> new RuntimeException("票券不存在"));
-            
-            // 2. 檢查數據庫庫存（雙重保障）
-            if (ticket.getAvailableStock() < message.getQuantity()) {
-                // 庫存不足，恢復 Redis 並創建失敗訂單
-                redisService.incrementStock(message.getTicketId(), message.getQuantity());
-                createFailedOrder(message, "庫存不足");
-                System.out.println("訂單處理失敗 - 庫存不足: " + message.getOrderSn());
-                return;
-            }
-            
-            // 3. 扣減數據庫庫存
-            ticket.setAvailableStock(ticket.getAvailableStock() - message.getQuantity());
-            ticketRepository.save(ticket);
-            
-            // 4. 創建成功訂單
-            createSuccessOrder(message, ticket);
-            
-            System.out.println("訂單處理成功: " + message.getOrderSn());
-            
+            result = orderBatchService.applyBatch(List.of(message));
+
+        } catch (DataIntegrityViolationException e) {
+            // 訂單號已存在：之前的投遞已提交，只是冪等標記沒寫上
+            System.out.println("⏭️ 訂單已存在，略過: " + message.getOrderSn());
+            orderIdempotencyService.markProcessed(List.of(message.getOrderSn()));
+            return;
+
         } catch (Exception e) {
-            // 處理失敗，恢復 Redis 並創建失敗訂單
-            redisService.incrementStock(message.getTicketId(), message.getQuantity());
+            // 交易已回滾，恢復 Redis 並創建失敗訂單
+            releaseStock(message);
             createFailedOrder(message, "系統錯誤: " + e.getMessage());
+            orderStatusService.publish(List.of(OrderStatusUpdate.failed(message, "系統錯誤")));
+            orderIdempotencyService.markProcessed(List.of(message.getOrderSn()));
             System.out.println("訂單處理失敗 - 系統錯誤: " + message.getOrderSn() + ", 錯誤: " + e.getMessage());
+            return;
+        }
+
+        // 2. 交易已提交，結果以資料庫為準；之後的歸還或推送失敗不改變訂單結果
+        if (result.rejected().isEmpty()) {
+            orderStatusService.publish(List.of(OrderStatusUpdate.paid(message)));
+            System.out.println("訂單處理成功: " + message.getOrderSn());
+        } else {
+            releaseStock(message);
+            orderStatusService.publish(List.of(OrderStatusUpdate.failed(message, "庫存不足")));
+            System.out.println("訂單處理失敗 - 庫存不足: " + message.getOrderSn());
         }
+
+        orderIdempotencyService.markProcessed(List.of(message.getOrderSn()));
     }
-    
+
     /**
-     * 創建成功訂單
+     * 歸還預扣庫存；失敗只記錄，訂單結果照常推送（Redis 庫存偏低的部分由對帳修正）
      */
-    private void createSuccessOrder(TicketPurchaseMessage message, Ticket ticket) {
-        Order order = new Order();
-        order.setOrderSn(message.getOrderSn());
-        order.setUserId(message.getUserId());
-        order.setTicketId(message.getTicketId());
-        order.setQuantity(message.getQuantity());
-        order.setTotalAmount(ticket.getPrice().multiply(BigDecimal.valueOf(message.getQuantity())));
-        order.setStatus(Order.OrderStatus.PAID);
-        
-        orderRepository.save(order);
+    private void releaseStock(TicketPurchaseMessage message) {
+        try {
+            inventoryEngine.release(message.getOrderSn(), message.getTicketId(), message.getUserId(), message.getQuantity());
+        } catch (Exception e) {
+            System.err.println("💥 歸還庫存失敗: " + message.getOrderSn() + ", 錯誤: " + e.getMessage());
+        }
     }
-    
+
     /**
      * 創建失敗訂單
      */
     private void createFailedOrder(TicketPurchaseMessage message, String errorReason) {
-        try {            
-            Order order = new Order();
-            order.setOrderSn(message.getOrderSn());
-            order.setUserId(message.getUserId());
-            order.setTicketId(message.getTicketId());
-            order.setQuantity(message.getQuantity());
-            order.setTotalAmount(BigDecimal.ZERO);
-            order.setStatus(Order.OrderStatus.FAILED);
-            order.setRemarks(errorReason);
-            
-            orderRepository.save(order);
-            System.out.println("📝 創建失敗訂單完成: " + order.getId() + " - " + errorReason);
-            
+        try {
+            orderBatchService.saveFailedOrder(message, errorReason);
+            System.out.println("📝 創建失敗訂單完成: " + message.getOrderSn() + " - " + errorReason);
+
         } catch (Exception e) {
             System.err.println("💥 創建失敗訂單異常: " + e.getMessage());
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,28 @@
 package com.ticket.controller;
 
-import com.ticket.entity.Ticket;
+import com.ticket.dto.TicketListQuery;
 import com.ticket.entity.Order;
 import com.ticket.service.TicketService;
 import com.ticket.service.TicketMQService;
+import com.ticket.service.StockShadowService;
+import com.ticket.service.TicketCatalogService;
+import com.ticket.service.OrderStatusService;
+import com.ticket.service.StockWarmupService;
+import com.ticket.service.WaitingRoomService;
 import com.ticket.repository.OrderRepository;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
-import java.util.List;
+import java.io.IOException;
+import java.security.Principal;
+import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.Optional;
 
@@ -16,43 +30,124 @@ import java.util.Optional;
 @RequestMapping("/api/tickets")
 public class TicketController {
     
+    private static final int MAX_PAGE_SIZE = 100;
+    
     private final TicketService ticketService;
     private final TicketMQService ticketMQService;
     private final OrderRepository orderRepository;
+    private final StockShadowService stockShadowService;
+    private final TicketCatalogService ticketCatalogService;
+    private final OrderStatusService orderStatusService;
+    private final StockWarmupService stockWarmupService;
+    private final WaitingRoomService waitingRoomService;
+    
+    @Value("${ticket.order-status.long-poll-timeout-ms:25000}")
+    private long maxLongPollMillis;
     
-    public TicketController(TicketService ticketService, TicketMQService ticketMQService, OrderRepository orderRepository) {
+    public TicketController(TicketService ticketService, TicketMQService ticketMQService, OrderRepository orderRepository,
+                            StockShadowService stockShadowService, TicketCatalogService ticketCatalogService,
+                            OrderStatusService orderStatusService, StockWarmupService stockWarmupService,
+                            WaitingRoomService waitingRoomService) {
         this.ticketService = ticketService;
         this.ticketMQService = ticketMQService;
         this.orderRepository = orderRepository;
+        this.stockShadowService = stockShadowService;
+        this.ticketCatalogService = ticketCatalogService;
+        this.orderStatusService = orderStatusService;
+        this.stockWarmupService = stockWarmupService;
+        this.waitingRoomService = waitingRoomService;
     }
     
     /**
-     * 獲取所有票券
+     * 獲取所有票券（目錄快取，If-None-Match 命中回 304）
      */
     @GetMapping
-    public ResponseEntity<List<Ticket>> getAllTickets() {
-        List<Ticket> tickets = ticketService.getAllTickets();
-        return ResponseEntity.ok(tickets);
+    public ResponseEntity<byte[]> getAllTickets() {
+        return catalogResponse(ticketCatalogService.getAllTickets());
     }
     
     /**
-     * 獲取單個票券詳情
+     * 分頁票券列表（keyset 分頁，cursor 帶上一頁回傳的 nextCursor）
+     * 時間參數為 ISO 格式，例如 2025-01-01T10:00:00
+     */
+    @GetMapping("/list")
+    public void listTickets(@RequestParam(required = false) Long cursor,
+                            @RequestParam(defaultValue = "20") int size,
+                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startsAfter,
+                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startsBefore,
+                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endsAfter,
+                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endsBefore,
+                            @RequestParam(defaultValue = "false") boolean onSaleNow,
+                            HttpServletResponse response) throws IOException {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        TicketListQuery query = new TicketListQuery(cursor, pageSize, startsAfter, startsBefore, endsAfter, endsBefore,
+                onSaleNow, LocalDateTime.now());
+        
+        // 直接寫入 response，逐筆輸出
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        ticketService.writeTicketPage(query, response.getOutputStream());
+    }
+    
+    /**
+     * 獲取單個票券詳情（目錄快取，If-None-Match 命中回 304）
      */
     @GetMapping("/{id}")
-    public ResponseEntity<Ticket> getTicket(@PathVariable Long id) {
-        Ticket ticket = ticketService.getTicketById(id);
-        return ResponseEntity.ok(ticket);
+    public ResponseEntity<byte[]> getTicket(@PathVariable Long id) {
+        return catalogResponse(ticketCatalogService.getTicket(id));
+    }
+    
+    // 帶 ETag 的 GET 回應由 Spring 比對 If-None-Match，相同時自動改回 304 且不送 body
+    private ResponseEntity<byte[]> catalogResponse(TicketCatalogService.CatalogBody body) {
+        return ResponseEntity.ok()
+                .eTag(body.etag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body.json());
     }
     
     /**
      * Redis + MQ 異步搶票
      */
     @PostMapping("/{id}/purchase-async")
-    public ResponseEntity<?> purchaseAsync(@PathVariable Long id, @RequestParam Integer quantity, @RequestHeader("Authorization") String token) {
+    public ResponseEntity<?> purchaseAsync(@PathVariable Long id, @RequestParam Integer quantity, @RequestHeader("Authorization") String token,
+                                           @RequestHeader(value = "X-Admission-Token", required = false) String admissionToken,
+                                           Principal principal) {
+        // 庫存尚未載入 Redis，此時預扣只會得到「未初始化」
+        if (!stockWarmupService.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(Map.of(
+                        "success", false,
+                        "message", "系統準備中，請稍後再試",
+                        "reason", "WARMING_UP"
+                    ));
+        }
+        
+        // 等候室開啟強制入場時，未持有效憑證的請求不進 Redis / MQ
+        if (waitingRoomService.isEnforced() && !waitingRoomService.verify(id, principal.getName(), admissionToken)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of(
+                "success", false,
+                "message", "請先進入等候室排隊",
+                "reason", "NOT_ADMITTED"
+            ));
+        }
+        
         try {
+            // 本地影子判定售罄，不碰 Redis 直接拒絕
+            if (stockShadowService.shouldReject(id, quantity)) {
+                return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "庫存不足",
+                    "reason", "SOLD_OUT"
+                ));
+            }
+            
             Long userId = 1L; // 暫時寫死
             
             Map<String, Object> result = ticketMQService.purchaseTicketAsync(id, userId, quantity);
+            if (!Boolean.TRUE.equals(result.get("success"))) {
+                return ResponseEntity.badRequest().body(result);
+            }
             return ResponseEntity.ok(result);
             
         } catch (RuntimeException e) {
@@ -63,17 +158,41 @@ public class TicketController {
         }
     }
 
+    /**
+     * 進入等候室，回傳排隊位置（已放行則直接回傳入場憑證）
+     */
+    @PostMapping("/{id}/waiting-room")
+    public ResponseEntity<?> joinWaitingRoom(@PathVariable Long id, Principal principal) {
+        return ResponseEntity.ok(waitingRoomService.join(id, principal.getName()));
+    }
+    
+    /**
+     * 查詢等候室狀態（只讀 Redis），放行後回傳入場憑證，搶票時帶在 X-Admission-Token
+     */
+    @GetMapping("/{id}/waiting-room")
+    public ResponseEntity<?> waitingRoomStatus(@PathVariable Long id, Principal principal) {
+        return ResponseEntity.ok(waitingRoomService.status(id, principal.getName()));
+    }
+
     /**
      * 查詢訂單狀態
      */
     @GetMapping("/orders/{orderSn}")
     public ResponseEntity<?> getOrder(@PathVariable String orderSn) {
+        // 預扣時寫入的訂單狀態記錄（PENDING / PAID / FAILED），有就不查資料庫
+        Map<String, Object> cached = orderStatusService.getCachedStatus(orderSn);
+        if (cached != null) {
+            return ResponseEntity.ok(cached);
+        }
+        
+        // 記錄已過期（或非異步下單），回資料庫查詢
         Optional<Order> orderOpt = orderRepository.findByOrderSn(orderSn);
         
         if (orderOpt.isEmpty()) {
-            return ResponseEntity.ok(Map.of(
-                "status", "processing",
-                "message", "訂單正在處理中，請稍後刷新"
+            // 處理中的訂單一定有狀態記錄，兩邊都沒有就是不存在
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                "status", "not_found",
+                "message", "訂單不存在"
             ));
         }
         
@@ -84,6 +203,16 @@ public class TicketController {
         ));
     }
     
+    /**
+     * 長輪詢訂單結果：有結果立即回應，否則掛起到消費者推送或逾時（逾時回 processing）
+     */
+    @GetMapping("/orders/{orderSn}/wait")
+    public DeferredResult<Map<String, Object>> waitForOrder(@PathVariable String orderSn,
+                                                            @RequestParam(required = false) Long timeoutMs) {
+        long timeout = timeoutMs == null ? maxLongPollMillis : Math.max(1, Math.min(timeoutMs, maxLongPollMillis));
+        return orderStatusService.await(orderSn, timeout);
+    }
+    
     /**
      * 初始化 Redis 庫存
      */
@@ -119,4 +248,48 @@ public class TicketController {
             ));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 純數據庫悲觀鎖搶票（對比測試用）
+     */
+    @PostMapping("/{id}/purchase-db-pessimistic")
+    public ResponseEntity<?> purchaseDBPessimistic(@PathVariable Long id, @RequestParam Integer quantity, @RequestHeader("Authorization") String token) {
+        try {
+            Long userId = 1L; // 暫時寫死
+            
+            Order order = ticketService.purchaseTicketDBPessimistic(id, userId, quantity);
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "message", "搶票成功",
+                "orderId", order.getId()
+            ));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * 純數據庫單一語句搶票（條件式 UPDATE + INSERT 同一個 CTE）
+     */
+    @PostMapping("/{id}/purchase-db-atomic")
+    public ResponseEntity<?> purchaseDBAtomic(@PathVariable Long id, @RequestParam Integer quantity, @RequestHeader("Authorization") String token) {
+        try {
+            Long userId = 1L; // 暫時寫死
+            
+            Long orderId = ticketService.purchaseTicketAtomic(id, userId, quantity);
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "message", "搶票成功",
+                "orderId", orderId
+            ));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", e.getMessage()
+            ));
+        }
+    }
+}
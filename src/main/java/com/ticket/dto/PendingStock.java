@@ -0,0 +1,7 @@
+package com.ticket.dto;
+
+/**
+ * 外寄箱中尚未套用到 Redis 的扣減量（每張票券加總）
+ */
+public record PendingStock(Long ticketId, Long quantity) {
+}
@@ -0,0 +1,54 @@
+package com.ticket.dto;
+
+/**
+ * Redis 預扣庫存結果
+ */
+public class ReservationResult {
+
+    public enum Status {
+        SUCCESS("搶票成功"),
+        SOLD_OUT("庫存不足"),
+        NOT_INITIALIZED("票券不存在或未初始化庫存"),
+        LIMIT_EXCEEDED("超過每人購買上限");
+
+        private final String message;
+
+        Status(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() { return message; }
+    }
+
+    private final Status status;
+    private final long remainingStock;
+
+    private ReservationResult(Status status, long remainingStock) {
+        this.status = status;
+        this.remainingStock = remainingStock;
+    }
+
+    public static ReservationResult success(long remainingStock) {
+        return new ReservationResult(Status.SUCCESS, remainingStock);
+    }
+
+    public static ReservationResult rejected(Status status) {
+        return new ReservationResult(status, -1);
+    }
+
+    public Status getStatus() { return status; }
+
+    public long getRemainingStock() { return remainingStock; }
+
+    public boolean isSuccess() { return status == Status.SUCCESS; }
+
+    public String getMessage() { return status.getMessage(); }
+
+    @Override
+    public String toString() {
+        return "ReservationResult{" +
+                "status=" + status +
+                ", remainingStock=" + remainingStock +
+                '}';
+    }
+}
@@ -0,0 +1,17 @@
+package com.ticket.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * 票券列表查詢條件，cursor 為上一頁最後一筆的 id（keyset 分頁）
+ * 時間條件為 null 表示不過濾；onSaleNow 為 true 時只列出 now 落在銷售區間內的票券
+ */
+public record TicketListQuery(Long cursor,
+                              int size,
+                              LocalDateTime startsAfter,
+                              LocalDateTime startsBefore,
+                              LocalDateTime endsAfter,
+                              LocalDateTime endsBefore,
+                              boolean onSaleNow,
+                              LocalDateTime now) {
+}
@@ -0,0 +1,9 @@
+package com.ticket.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * 票券資料庫可售庫存與銷售結束時間，對帳 / 預熱用
+ */
+public record TicketStock(Long id, Integer availableStock, LocalDateTime saleEndTime) {
+}
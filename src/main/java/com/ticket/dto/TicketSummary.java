@@ -0,0 +1,15 @@
+package com.ticket.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 票券列表投影，只查列表頁需要的欄位
+ */
+public record TicketSummary(Long id,
+                            String name,
+                            BigDecimal price,
+                            Integer availableStock,
+                            LocalDateTime saleStartTime,
+                            LocalDateTime saleEndTime) {
+}
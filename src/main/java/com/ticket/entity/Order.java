@@ -10,7 +10,8 @@ import java.time.LocalDateTime;
 @Table(name = "orders")
 public class Order {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_seq")
+    @SequenceGenerator(name = "order_seq", sequenceName = "orders_seq", allocationSize = 50)  // pooled 序列，IDENTITY 會關閉 JDBC 批量寫入
     private Long id;
     
     @Column(name = "order_sn", unique = true, nullable = false)
@@ -46,9 +47,8 @@ public class Order {
         FAILED      // 新增：處理失敗
     }
     
-    // 無參構造器 - 生成默認訂單號
+    // 無參構造器 - 訂單號由 OrderSnGenerator 生成後設置
     public Order() {
-        this.orderSn = "TEMP" + System.currentTimeMillis();
     }
     
     // 全參構造器（可選）
@@ -71,10 +71,6 @@ public class Order {
         if (status == null) {
             status = OrderStatus.PENDING;
         }
-        // 確保 orderSn 不為空
-        if (orderSn == null || orderSn.startsWith("TEMP")) {
-            orderSn = "T" + System.currentTimeMillis() + String.format("%03d", (int)(Math.random() * 1000));
-        }
     }
     
     @PreUpdate
@@ -0,0 +1,52 @@
+package com.ticket.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 交易外寄箱（transactional outbox）
+ * 與訂單在同一個交易內寫入，由 OutboxRelay 輪詢後把效果套用到 Redis，套用完成即刪除。
+ */
+@Data
+@Entity
+@Table(name = "outbox_events")
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_seq")
+    @SequenceGenerator(name = "outbox_seq", sequenceName = "outbox_events_seq", allocationSize = 50)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private EventType eventType;
+    
+    @Column(nullable = false)
+    private Long ticketId;
+    
+    @Column(nullable = false)
+    private String orderSn;
+    
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    public enum EventType {
+        STOCK_DECREMENTED   // 資料庫已扣庫存，Redis 庫存跟著扣
+    }
+    
+    public OutboxEvent() {
+    }
+    
+    public static OutboxEvent stockDecremented(Long ticketId, String orderSn, Integer quantity) {
+        OutboxEvent event = new OutboxEvent();
+        event.setEventType(EventType.STOCK_DECREMENTED);
+        event.setTicketId(ticketId);
+        event.setOrderSn(orderSn);
+        event.setQuantity(quantity);
+        event.setCreatedAt(LocalDateTime.now());
+        return event;
+    }
+}
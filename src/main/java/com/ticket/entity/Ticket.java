@@ -7,7 +7,11 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "tickets")
+@Table(name = "tickets", indexes = {
+    // 列表過濾：銷售區間條件走索引，分頁以 id 為 keyset
+    @Index(name = "idx_tickets_sale_window", columnList = "sale_start_time, sale_end_time, id"),
+    @Index(name = "idx_tickets_sale_end", columnList = "sale_end_time, id")
+})
 public class Ticket {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
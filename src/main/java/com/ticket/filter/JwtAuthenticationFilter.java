@@ -1,6 +1,7 @@
 package com.ticket.filter;
 
 import com.ticket.util.JwtUtil;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -32,8 +33,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             String token = authHeader.substring(7);
             
             try {
-                if (jwtUtil.validateToken(token)) {
-                    String username = jwtUtil.extractUsername(token);
+                // 驗證與解析只做一次（命中快取時不驗簽）
+                Claims claims = jwtUtil.parseClaims(token);
+                if (claims != null) {
+                    String username = claims.getSubject();
                     
                     // 創建認證對象
                     UsernamePasswordAuthenticationToken authentication = 
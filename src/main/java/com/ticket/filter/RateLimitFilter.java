@@ -0,0 +1,74 @@
+package com.ticket.filter;
+
+import com.ticket.service.RateLimitService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 搶票入口限流，排在 JwtAuthenticationFilter 之後（以登入用戶為單位，未登入以來源 IP）
+ * 只攔 POST /api/tickets/{id}/purchase-*，其餘請求直接放行
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final Pattern PURCHASE_PATH = Pattern.compile("^/api/tickets/(\\d+)/purchase-[\\w-]+$");
+
+    private static final byte[] REJECTED_BODY =
+            "{\"success\":false,\"message\":\"請求過於頻繁，請稍後再試\",\"reason\":\"RATE_LIMITED\"}"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private final RateLimitService rateLimitService;
+
+    public RateLimitFilter(RateLimitService rateLimitService) {
+        this.rateLimitService = rateLimitService;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        Matcher matcher = PURCHASE_PATH.matcher(request.getRequestURI());
+        if (!matcher.matches()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        long waitMillis = rateLimitService.tryAcquire(client(request), Long.valueOf(matcher.group(1)));
+        if (waitMillis > 0) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            // Retry-After 只能帶整數秒
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf((waitMillis + 999) / 1000));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getOutputStream().write(REJECTED_BODY);
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    private static String client(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated() && authentication.getName() != null) {
+            return "u:" + authentication.getName();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,87 @@
+package com.ticket.repository;
+
+import com.ticket.entity.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+
+/**
+ * 預扣逾時訂單的批量寫入
+ * 以 unnest 陣列一次寫入整批 EXPIRED 訂單；order_sn 唯一索引是與消費者之間的仲裁：
+ * 消費者先提交就 DO NOTHING，本批先寫入則消費者的交易因唯一鍵衝突整筆回滾。
+ */
+@Repository
+public class OrderExpiryRepository {
+
+    // 回傳本次寫入的 + 之前已是 EXPIRED 的（上次寫完 DB 但沒來得及歸還 Redis），歸還本身是冪等的
+    private static final String INSERT_EXPIRED_SQL = """
+            WITH candidates AS (
+                SELECT * FROM unnest(?::text[], ?::bigint[], ?::bigint[], ?::int[])
+                    AS c(order_sn, ticket_id, user_id, quantity)
+            ), inserted AS (
+                INSERT INTO orders (id, order_sn, user_id, ticket_id, quantity, total_amount, status, remarks, created_at, updated_at)
+                SELECT nextval('orders_seq'), order_sn, user_id, ticket_id, quantity, 0, 'EXPIRED', '預扣逾時', NOW(), NOW()
+                FROM candidates
+                ON CONFLICT (order_sn) DO NOTHING
+                RETURNING order_sn
+            )
+            SELECT order_sn FROM inserted
+            UNION
+            SELECT o.order_sn FROM orders o JOIN candidates c ON c.order_sn = o.order_sn WHERE o.status = 'EXPIRED'
+            """;
+
+    private static final String FIND_SETTLED_SQL = """
+            SELECT order_sn, ticket_id, quantity, status, remarks FROM orders WHERE order_sn = ANY(?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OrderExpiryRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 批量寫入 EXPIRED 訂單，回傳資料庫中狀態為 EXPIRED 的訂單號
+     */
+    public List<String> insertExpired(List<ExpiredReservation> reservations) {
+        if (reservations.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_EXPIRED_SQL);
+            statement.setArray(1, connection.createArrayOf("text",
+                    reservations.stream().map(ExpiredReservation::orderSn).toArray()));
+            statement.setArray(2, connection.createArrayOf("bigint",
+                    reservations.stream().map(ExpiredReservation::ticketId).toArray()));
+            statement.setArray(3, connection.createArrayOf("bigint",
+                    reservations.stream().map(ExpiredReservation::userId).toArray()));
+            statement.setArray(4, connection.createArrayOf("int4",
+                    reservations.stream().map(ExpiredReservation::quantity).toArray()));
+            return statement;
+        }, (resultSet, rowNum) -> resultSet.getString(1));
+    }
+
+    /**
+     * 查詢已有結果的訂單（消費者已成單或已失敗），用於結清預扣並補推送結果；不存在的訂單不會出現在結果中
+     */
+    public List<SettledOrder> findSettled(List<String> orderSns) {
+        if (orderSns.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(FIND_SETTLED_SQL);
+            statement.setArray(1, connection.createArrayOf("text", orderSns.toArray()));
+            return statement;
+        }, (resultSet, rowNum) -> new SettledOrder(resultSet.getString(1), resultSet.getLong(2), resultSet.getInt(3),
+                Order.OrderStatus.valueOf(resultSet.getString(4)), resultSet.getString(5)));
+    }
+
+    public record SettledOrder(String orderSn, Long ticketId, Integer quantity, Order.OrderStatus status,
+                               String remarks) {
+    }
+
+    public record ExpiredReservation(String orderSn, Long ticketId, Long userId, Integer quantity) {
+    }
+}
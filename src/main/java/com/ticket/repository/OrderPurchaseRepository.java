@@ -0,0 +1,44 @@
+package com.ticket.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * 單一語句搶票
+ * 條件式 UPDATE 扣庫存與 INSERT 訂單放在同一個 CTE，一次往返、一個語句完成：
+ * 不載入實體、沒有版本衝突與重試；同一張票券的併發請求在列鎖上排隊，
+ * 前一筆提交後 PostgreSQL 以新值重新檢查 available_stock >= ?，不足就不更新、也不會插入訂單。
+ */
+@Repository
+public class OrderPurchaseRepository {
+
+    private static final String PURCHASE_SQL = """
+            WITH dec AS (
+                UPDATE tickets
+                SET available_stock = available_stock - ?, version = version + 1, updated_at = NOW()
+                WHERE id = ? AND available_stock >= ?
+                RETURNING id, price
+            )
+            INSERT INTO orders (id, order_sn, user_id, ticket_id, quantity, total_amount, status, created_at, updated_at)
+            SELECT nextval('orders_seq'), ?, ?, dec.id, ?, dec.price * ?, 'PAID', NOW(), NOW()
+            FROM dec
+            RETURNING id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OrderPurchaseRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 扣庫存並建立 PAID 訂單，回傳訂單 ID；庫存不足或票券不存在回傳 null（兩者都沒有寫入）
+     */
+    public Long purchase(String orderSn, Long ticketId, Long userId, int quantity) {
+        List<Long> ids = jdbcTemplate.queryForList(PURCHASE_SQL, Long.class,
+                quantity, ticketId, quantity, orderSn, userId, quantity, quantity);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+}
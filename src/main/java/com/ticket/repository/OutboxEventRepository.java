@@ -0,0 +1,23 @@
+package com.ticket.repository;
+
+import com.ticket.dto.PendingStock;
+import com.ticket.entity.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    
+    // 依寫入順序鎖定一批，其他節點的 relay 跳過已被鎖定的列，可並行消化
+    @Query(value = "SELECT * FROM outbox_events ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxEvent> lockBatch(@Param("limit") int limit);
+    
+    // 尚未套用的扣減量，對帳時資料庫庫存要加回這部分才與 Redis 可比
+    @Query("SELECT new com.ticket.dto.PendingStock(e.ticketId, SUM(e.quantity)) FROM OutboxEvent e " +
+           "WHERE e.eventType = com.ticket.entity.OutboxEvent.EventType.STOCK_DECREMENTED GROUP BY e.ticketId")
+    List<PendingStock> findPendingStocks();
+}
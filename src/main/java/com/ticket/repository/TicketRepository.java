@@ -1,17 +1,20 @@
 package com.ticket.repository;
 
+import com.ticket.dto.TicketStock;
 import com.ticket.entity.Ticket;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import jakarta.persistence.LockModeType;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface TicketRepository extends JpaRepository<Ticket, Long> {
+public interface TicketRepository extends JpaRepository<Ticket, Long>, TicketRepositoryCustom {
     
     // 使用悲觀鎖查詢
     @Lock(LockModeType.PESSIMISTIC_WRITE)
@@ -21,4 +24,18 @@ public interface TicketRepository extends JpaRepository<Ticket, Long> {
     // 使用樂觀鎖查詢
     @Lock(LockModeType.OPTIMISTIC)
     Optional<Ticket> findById(Long id);
+    
+    // 無鎖讀取，目錄快取回源用
+    @Query("SELECT t FROM Ticket t WHERE t.id = :id")
+    Optional<Ticket> findForCatalog(@Param("id") Long id);
+    
+    // 全部票券的可售庫存，一次查回供對帳
+    @Query("SELECT new com.ticket.dto.TicketStock(t.id, t.availableStock, t.saleEndTime) FROM Ticket t ORDER BY t.id")
+    List<TicketStock> findAllStocks();
+    
+    // 條件式批量扣庫存，庫存不足時不更新（回傳 0）
+    @Modifying
+    @Query(value = "UPDATE tickets SET available_stock = available_stock - :quantity, version = version + 1, updated_at = NOW() " +
+                   "WHERE id = :id AND available_stock >= :quantity", nativeQuery = true)
+    int decrementAvailableStock(@Param("id") Long id, @Param("quantity") int quantity);
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.ticket.repository;
+
+import com.ticket.dto.TicketListQuery;
+import com.ticket.dto.TicketStock;
+import com.ticket.dto.TicketSummary;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface TicketRepositoryCustom {
+
+    /**
+     * keyset 分頁查詢列表投影，最多回傳 limit 筆；須在交易內消費完 Stream
+     */
+    Stream<TicketSummary> streamSummaries(TicketListQuery query, int limit);
+
+    /**
+     * 庫存預熱用：id 大於 cursor、尚未結束銷售、開賣時間早於 startsBefore 的票券（依 id 排序，最多 limit 筆）
+     * startsFrom 不為 null 時只取開賣時間 >= startsFrom 的（增量預熱）；時間為 null 的票券視為不限
+     */
+    List<TicketStock> findWarmupChunk(Long cursor, LocalDateTime startsFrom, LocalDateTime startsBefore,
+                                      LocalDateTime now, int limit);
+}
@@ -0,0 +1,101 @@
+package com.ticket.repository;
+
+import com.ticket.dto.TicketListQuery;
+import com.ticket.dto.TicketStock;
+import com.ticket.dto.TicketSummary;
+import com.ticket.entity.Ticket;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.jpa.HibernateHints;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 動態組 WHERE：只帶有值的條件，避免 ":x IS NULL OR ..." 讓 Postgres 通用計劃用不上索引
+ */
+public class TicketRepositoryImpl implements TicketRepositoryCustom {
+
+    private static final int FETCH_SIZE = 100;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Stream<TicketSummary> streamSummaries(TicketListQuery query, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<TicketSummary> cq = cb.createQuery(TicketSummary.class);
+        Root<Ticket> t = cq.from(Ticket.class);
+
+        cq.select(cb.construct(TicketSummary.class,
+                t.get("id"), t.get("name"), t.get("price"), t.get("availableStock"),
+                t.get("saleStartTime"), t.get("saleEndTime")));
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (query.cursor() != null) {
+            predicates.add(cb.greaterThan(t.get("id"), query.cursor()));
+        }
+        if (query.startsAfter() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(t.<LocalDateTime>get("saleStartTime"), query.startsAfter()));
+        }
+        if (query.startsBefore() != null) {
+            predicates.add(cb.lessThan(t.<LocalDateTime>get("saleStartTime"), query.startsBefore()));
+        }
+        if (query.endsAfter() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(t.<LocalDateTime>get("saleEndTime"), query.endsAfter()));
+        }
+        if (query.endsBefore() != null) {
+            predicates.add(cb.lessThan(t.<LocalDateTime>get("saleEndTime"), query.endsBefore()));
+        }
+        if (query.onSaleNow()) {
+            predicates.add(cb.lessThanOrEqualTo(t.<LocalDateTime>get("saleStartTime"), query.now()));
+            predicates.add(cb.greaterThan(t.<LocalDateTime>get("saleEndTime"), query.now()));
+        }
+
+        cq.where(predicates.toArray(Predicate[]::new));
+        cq.orderBy(cb.asc(t.get("id")));
+
+        return entityManager.createQuery(cq)
+                .setMaxResults(limit)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, FETCH_SIZE)
+                .getResultStream();
+    }
+
+    @Override
+    public List<TicketStock> findWarmupChunk(Long cursor, LocalDateTime startsFrom, LocalDateTime startsBefore,
+                                             LocalDateTime now, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<TicketStock> cq = cb.createQuery(TicketStock.class);
+        Root<Ticket> t = cq.from(Ticket.class);
+
+        cq.select(cb.construct(TicketStock.class, t.get("id"), t.get("availableStock"), t.get("saleEndTime")));
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (cursor != null) {
+            predicates.add(cb.greaterThan(t.get("id"), cursor));
+        }
+        predicates.add(cb.or(cb.isNull(t.get("saleEndTime")),
+                cb.greaterThan(t.<LocalDateTime>get("saleEndTime"), now)));
+        if (startsFrom != null) {
+            predicates.add(cb.greaterThanOrEqualTo(t.<LocalDateTime>get("saleStartTime"), startsFrom));
+            predicates.add(cb.lessThan(t.<LocalDateTime>get("saleStartTime"), startsBefore));
+        } else {
+            predicates.add(cb.or(cb.isNull(t.get("saleStartTime")),
+                    cb.lessThan(t.<LocalDateTime>get("saleStartTime"), startsBefore)));
+        }
+
+        cq.where(predicates.toArray(Predicate[]::new));
+        cq.orderBy(cb.asc(t.get("id")));
+
+        return entityManager.createQuery(cq)
+                .setMaxResults(limit)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, limit)
+                .getResultList();
+    }
+}
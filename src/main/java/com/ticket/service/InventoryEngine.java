@@ -0,0 +1,51 @@
+package com.ticket.service;
+
+import com.ticket.dto.ReservationResult;
+import com.ticket.dto.TicketStock;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 庫存引擎：搶票路徑上的預扣 / 歸還 / 初始化
+ * redis（預設）：多節點共用 Redis 計數；local：單節點部署，計數留在 JVM 內並寫入本地 journal
+ * 以 ticket.inventory.engine 切換
+ */
+public interface InventoryEngine {
+
+    /**
+     * 原子預扣庫存（售罄檢查、每人上限、扣減）
+     */
+    ReservationResult reserve(String orderSn, Long ticketId, Long userId, Integer quantity);
+
+    /**
+     * 歸還預扣庫存，每個訂單只會歸還一次，重複呼叫回傳 null
+     */
+    Long release(String orderSn, Long ticketId, Long userId, Integer quantity);
+
+    /**
+     * 設定庫存（覆蓋）
+     */
+    void setStock(Long ticketId, Integer stock, LocalDateTime saleEndTime);
+
+    /**
+     * 目前庫存，未初始化回傳 null
+     */
+    Integer getStock(Long ticketId);
+
+    /**
+     * 是否已售罄（等候室據此停止放行、告知排隊中的用戶）
+     */
+    boolean isSoldOut(Long ticketId);
+
+    /**
+     * 批量載入尚未初始化的票券庫存，回傳實際載入筆數
+     */
+    int warm(List<TicketStock> tickets);
+
+    /**
+     * 預扣時是否已一併寫入 PENDING 訂單狀態、預扣期限與在途數量
+     * 否則由呼叫方以 RedisService.recordReservation 補寫，逾時回收與訂單查詢才看得到這筆預扣
+     */
+    boolean recordsReservation();
+}
@@ -0,0 +1,276 @@
+package com.ticket.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ticket.dto.ReservationResult;
+import com.ticket.dto.TicketStock;
+import com.ticket.util.InventoryJournal;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地庫存引擎（單節點部署）
+ * 每張票券一個 AtomicLong，預扣以 CAS 迴圈「足夠才扣」，不加鎖、不會超賣；
+ * 每筆異動在記憶體生效後、回傳呼叫方前追加到本地異動日誌（redo log，不是 write-ahead：其他執行緒可能先看到新計數），
+ * 預扣的紀錄追加失敗就把記憶體改回來並拋出，呼叫方沒拿到成功的預扣不會留在計數裡；
+ * flusher 執行緒每 fsync-interval-ms 批量落盤（0 = 每筆都 fsync 後才回傳），
+ * 重啟時 replay 日誌重建庫存、用戶已購數量與已歸還訂單，再壓縮成快照。
+ * 只適用單一節點：多節點各自持有一份庫存會超賣。
+ * 本引擎只接手庫存計數：PENDING 訂單狀態、預扣期限與在途數量由 TicketMQService 預扣成功後
+ * 以 RedisService.recordReservation 寫入 Redis，逾時回收與訂單查詢照常運作。
+ */
+@Service
+@ConditionalOnProperty(name = "ticket.inventory.engine", havingValue = "local")
+public class LocalInventoryEngine implements InventoryEngine {
+
+    private final Map<Long, AtomicLong> stocks = new ConcurrentHashMap<>();
+    private final Map<PurchaseKey, AtomicInteger> purchased = new ConcurrentHashMap<>();
+    // 已歸還的訂單號 → 歸還時間，保證每個訂單只歸還一次
+    private final Cache<String, Long> released;
+    private final Path journalPath;
+    private final long idempotencyTtlMillis;
+
+    @Value("${ticket.purchase.max-per-user:0}")
+    private int maxPerUser;
+
+    @Value("${ticket.inventory.local.fsync-interval-ms:10}")
+    private long fsyncIntervalMillis;
+
+    @Value("${ticket.inventory.local.buffer-records:4096}")
+    private int bufferRecords;
+
+    private InventoryJournal journal;
+    private volatile boolean running;
+    private Thread flusherThread;
+
+    public LocalInventoryEngine(@Value("${ticket.inventory.local.journal-path:data/inventory.journal}") String journalPath,
+                                @Value("${ticket.idempotency.ttl-hours:24}") long idempotencyTtlHours) {
+        this.journalPath = Path.of(journalPath);
+        this.idempotencyTtlMillis = TimeUnit.HOURS.toMillis(idempotencyTtlHours);
+        this.released = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(idempotencyTtlMillis))
+                .build();
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        journal = new InventoryJournal(journalPath, bufferRecords);
+        long records = replay();
+        compact();
+        System.out.println("📒 本地庫存引擎啟動: 重播 " + records + " 筆日誌, 票券數=" + stocks.size()
+                + ", journal=" + journalPath.toAbsolutePath());
+        if (fsyncIntervalMillis > 0) {
+            running = true;
+            flusherThread = new Thread(this::runLoop, "inventory-journal-flusher");
+            flusherThread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        if (flusherThread != null) {
+            // 不 interrupt：FileChannel 在 IO 中被中斷會直接關閉，等這一輪睡完自然結束
+            flusherThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        journal.close();
+    }
+
+    @Override
+    public ReservationResult reserve(String orderSn, Long ticketId, Long userId, Integer quantity) {
+        AtomicLong stock = stocks.get(ticketId);
+        if (stock == null) {
+            return ReservationResult.rejected(ReservationResult.Status.NOT_INITIALIZED);
+        }
+        // 先佔用戶額度，庫存不足再退回；同一用戶併發時寧可誤拒也不會超過上限
+        AtomicInteger bought = purchased.computeIfAbsent(new PurchaseKey(ticketId, userId), key -> new AtomicInteger());
+        int total = bought.addAndGet(quantity);
+        if (maxPerUser > 0 && total > maxPerUser) {
+            bought.addAndGet(-quantity);
+            return ReservationResult.rejected(ReservationResult.Status.LIMIT_EXCEEDED);
+        }
+        long remaining;
+        while (true) {
+            long current = stock.get();
+            if (current < quantity) {
+                bought.addAndGet(-quantity);
+                return ReservationResult.rejected(ReservationResult.Status.SOLD_OUT);
+            }
+            remaining = current - quantity;
+            if (stock.compareAndSet(current, remaining)) {
+                break;
+            }
+        }
+        try {
+            journal.append(InventoryJournal.RESERVE, ticketId, userId, quantity, 0, orderSn);
+        } catch (RuntimeException e) {
+            // 紀錄沒進日誌：退回計數，重啟重播與記憶體一致
+            stock.addAndGet(quantity);
+            bought.addAndGet(-quantity);
+            throw e;
+        }
+        syncIfNeeded();
+        return ReservationResult.success(remaining);
+    }
+
+    @Override
+    public Long release(String orderSn, Long ticketId, Long userId, Integer quantity) {
+        long releasedAt = System.currentTimeMillis();
+        if (released.asMap().putIfAbsent(orderSn, releasedAt) != null) {
+            System.out.println("⏭️ 本地庫存: RELEASE 已執行過，略過 order=" + orderSn);
+            return null;
+        }
+        long remaining = stocks.computeIfAbsent(ticketId, id -> new AtomicLong()).addAndGet(quantity);
+        AtomicInteger bought = purchased.get(new PurchaseKey(ticketId, userId));
+        if (bought != null) {
+            bought.addAndGet(-quantity);
+        }
+        append(InventoryJournal.RELEASE, ticketId, userId, quantity, releasedAt, orderSn);
+        return remaining;
+    }
+
+    @Override
+    public void setStock(Long ticketId, Integer stock, LocalDateTime saleEndTime) {
+        stocks.computeIfAbsent(ticketId, id -> new AtomicLong()).set(stock);
+        append(InventoryJournal.SET, ticketId, 0, 0, stock, null);
+    }
+
+    @Override
+    public Integer getStock(Long ticketId) {
+        AtomicLong stock = stocks.get(ticketId);
+        return stock != null ? (int) stock.get() : null;
+    }
+
+    /**
+     * 本地沒有售罄標記，計數歸零即售罄（歸還後自動恢復）
+     */
+    @Override
+    public boolean isSoldOut(Long ticketId) {
+        AtomicLong stock = stocks.get(ticketId);
+        return stock != null && stock.get() <= 0;
+    }
+
+    /**
+     * 只載入本地尚未持有的票券（已持有的以日誌重建的值為準）
+     */
+    @Override
+    public int warm(List<TicketStock> tickets) {
+        int loaded = 0;
+        for (TicketStock ticket : tickets) {
+            if (stocks.putIfAbsent(ticket.id(), new AtomicLong(ticket.availableStock())) == null) {
+                append(InventoryJournal.SET, ticket.id(), 0, 0, ticket.availableStock(), null);
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public boolean recordsReservation() {
+        return false;
+    }
+
+    private void append(byte type, long ticketId, long userId, int quantity, long value, String orderSn) {
+        journal.append(type, ticketId, userId, quantity, value, orderSn);
+        syncIfNeeded();
+    }
+
+    // 已追加的紀錄留在緩衝區，fsync 失敗時由下一次 flush 重試
+    private void syncIfNeeded() {
+        if (fsyncIntervalMillis <= 0) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        try {
+            journal.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("庫存日誌落盤失敗", e);
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                Thread.sleep(fsyncIntervalMillis);
+                flush();
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                System.err.println("💥 庫存日誌落盤異常: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 依序套用日誌；SET 與同時進行的預扣在日誌中的先後可能與記憶體相反，重播結果只會偏少，不會超賣
+     */
+    private long replay() throws IOException {
+        long now = System.currentTimeMillis();
+        AtomicLong records = new AtomicLong();
+        journal.replay(record -> {
+            records.incrementAndGet();
+            switch (record.type()) {
+                case InventoryJournal.SET ->
+                        stocks.computeIfAbsent(record.ticketId(), id -> new AtomicLong()).set(record.value());
+                case InventoryJournal.RESERVE -> {
+                    stocks.computeIfAbsent(record.ticketId(), id -> new AtomicLong()).addAndGet(-record.quantity());
+                    addPurchased(record.ticketId(), record.userId(), record.quantity());
+                }
+                case InventoryJournal.RELEASE -> {
+                    if (released.asMap().putIfAbsent(record.orderSn(), record.value()) == null) {
+                        stocks.computeIfAbsent(record.ticketId(), id -> new AtomicLong()).addAndGet(record.quantity());
+                        addPurchased(record.ticketId(), record.userId(), -record.quantity());
+                    }
+                }
+                case InventoryJournal.PURCHASED -> addPurchased(record.ticketId(), record.userId(), (int) record.value());
+                case InventoryJournal.RELEASED -> {
+                    if (now - record.value() < idempotencyTtlMillis) {
+                        released.put(record.orderSn(), record.value());
+                    }
+                }
+                default -> System.err.println("⚠️ 未知的庫存日誌類型: " + record.type());
+            }
+        });
+        return records.get();
+    }
+
+    /**
+     * 把目前狀態寫成快照取代舊日誌，只在啟動時（尚未對外服務）呼叫
+     */
+    private void compact() throws IOException {
+        journal.compact(writer -> {
+            stocks.forEach((ticketId, stock) ->
+                    writer.write(InventoryJournal.SET, ticketId, 0, 0, stock.get(), null));
+            purchased.forEach((key, bought) -> {
+                if (bought.get() > 0) {
+                    writer.write(InventoryJournal.PURCHASED, key.ticketId(), key.userId(), 0, bought.get(), null);
+                }
+            });
+            released.asMap().forEach((orderSn, releasedAt) ->
+                    writer.write(InventoryJournal.RELEASED, 0, 0, 0, releasedAt, orderSn));
+        });
+    }
+
+    private void addPurchased(long ticketId, long userId, int quantity) {
+        purchased.computeIfAbsent(new PurchaseKey(ticketId, userId), key -> new AtomicInteger()).addAndGet(quantity);
+    }
+
+    private record PurchaseKey(long ticketId, long userId) {
+    }
+}
@@ -0,0 +1,121 @@
+package com.ticket.service;
+
+import com.ticket.dto.TicketPurchaseMessage;
+import com.ticket.entity.Order;
+import com.ticket.entity.Ticket;
+import com.ticket.repository.OrderRepository;
+import com.ticket.repository.TicketRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 批量訂單寫入
+ * 同一票券的消息合併成一條條件式 UPDATE，訂單以 JDBC batch 一次寫入
+ */
+@Service
+public class OrderBatchService {
+
+    private final TicketRepository ticketRepository;
+    private final OrderRepository orderRepository;
+
+    public OrderBatchService(TicketRepository ticketRepository, OrderRepository orderRepository) {
+        this.ticketRepository = ticketRepository;
+        this.orderRepository = orderRepository;
+    }
+
+    /**
+     * 在同一交易內處理整批消息
+     * 回傳被拒絕（庫存不足 / 票券不存在）的消息，由呼叫方在提交後補償 Redis
+     */
+    @Transactional
+    public BatchResult applyBatch(List<TicketPurchaseMessage> messages) {
+        Map<Long, List<TicketPurchaseMessage>> byTicket = messages.stream()
+                .collect(Collectors.groupingBy(TicketPurchaseMessage::getTicketId, LinkedHashMap::new, Collectors.toList()));
+
+        Map<Long, Ticket> tickets = ticketRepository.findAllById(byTicket.keySet()).stream()
+                .collect(Collectors.toMap(Ticket::getId, Function.identity()));
+
+        List<Order> orders = new ArrayList<>(messages.size());
+        List<TicketPurchaseMessage> accepted = new ArrayList<>();
+        List<TicketPurchaseMessage> rejected = new ArrayList<>();
+
+        for (Map.Entry<Long, List<TicketPurchaseMessage>> group : byTicket.entrySet()) {
+            Ticket ticket = tickets.get(group.getKey());
+            List<TicketPurchaseMessage> groupMessages = group.getValue();
+
+            if (ticket == null) {
+                for (TicketPurchaseMessage message : groupMessages) {
+                    orders.add(failedOrder(message, "票券不存在"));
+                    rejected.add(message);
+                }
+                continue;
+            }
+
+            // 1. 整組一次扣減
+            int sum = groupMessages.stream().mapToInt(TicketPurchaseMessage::getQuantity).sum();
+            if (ticketRepository.decrementAvailableStock(ticket.getId(), sum) == 1) {
+                for (TicketPurchaseMessage message : groupMessages) {
+                    orders.add(paidOrder(message, ticket));
+                    accepted.add(message);
+                }
+                continue;
+            }
+
+            // 2. 整組不夠扣，逐筆扣到賣完為止
+            for (TicketPurchaseMessage message : groupMessages) {
+                if (ticketRepository.decrementAvailableStock(ticket.getId(), message.getQuantity()) == 1) {
+                    orders.add(paidOrder(message, ticket));
+                    accepted.add(message);
+                } else {
+                    orders.add(failedOrder(message, "庫存不足"));
+                    rejected.add(message);
+                }
+            }
+        }
+
+        orderRepository.saveAll(orders);
+        return new BatchResult(accepted, rejected);
+    }
+
+    /**
+     * 單獨寫入失敗訂單（批次整體失敗後的降級路徑）
+     */
+    @Transactional
+    public void saveFailedOrder(TicketPurchaseMessage message, String errorReason) {
+        orderRepository.save(failedOrder(message, errorReason));
+    }
+
+    private Order paidOrder(TicketPurchaseMessage message, Ticket ticket) {
+        Order order = new Order();
+        order.setOrderSn(message.getOrderSn());
+        order.setUserId(message.getUserId());
+        order.setTicketId(message.getTicketId());
+        order.setQuantity(message.getQuantity());
+        order.setTotalAmount(ticket.getPrice().multiply(BigDecimal.valueOf(message.getQuantity())));
+        order.setStatus(Order.OrderStatus.PAID);
+        return order;
+    }
+
+    private Order failedOrder(TicketPurchaseMessage message, String errorReason) {
+        Order order = new Order();
+        order.setOrderSn(message.getOrderSn());
+        order.setUserId(message.getUserId());
+        order.setTicketId(message.getTicketId());
+        order.setQuantity(message.getQuantity());
+        order.setTotalAmount(BigDecimal.ZERO);
+        order.setStatus(Order.OrderStatus.FAILED);
+        order.setRemarks(errorReason);
+        return order;
+    }
+
+    public record BatchResult(List<TicketPurchaseMessage> accepted, List<TicketPurchaseMessage> rejected) {
+    }
+}
@@ -0,0 +1,77 @@
+package com.ticket.service;
+
+import com.ticket.dto.TicketPurchaseMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 訂單冪等檢查
+ * 訂單提交後在 Redis 記下 orderSn，重複投遞的消息在碰資料庫前以 O(1) 略過；
+ * 標記遺失時（例如提交後當機）由 orders.order_sn 唯一索引兜底。
+ */
+@Service
+public class OrderIdempotencyService {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${ticket.idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    public OrderIdempotencyService(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    public boolean isProcessed(String orderSn) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(processedKey(orderSn)));
+    }
+
+    /**
+     * 過濾掉已處理的消息（一次 MGET）
+     */
+    public List<TicketPurchaseMessage> filterUnprocessed(List<TicketPurchaseMessage> messages) {
+        List<String> keys = messages.stream().map(message -> processedKey(message.getOrderSn())).toList();
+        List<String> markers = stringRedisTemplate.opsForValue().multiGet(keys);
+
+        List<TicketPurchaseMessage> unprocessed = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            if (markers == null || markers.get(i) == null) {
+                unprocessed.add(messages.get(i));
+            }
+        }
+        return unprocessed;
+    }
+
+    /**
+     * 交易提交後標記已處理（pipeline 一次寫入）
+     * 標記失敗不影響正確性，只是重複消息要靠唯一索引擋下
+     */
+    public void markProcessed(Collection<String> orderSns) {
+        if (orderSns.isEmpty()) {
+            return;
+        }
+        long ttlSeconds = TimeUnit.HOURS.toSeconds(ttlHours);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (String orderSn : orderSns) {
+                    stringConnection.setEx(processedKey(orderSn), ttlSeconds, "1");
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            System.err.println("⚠️ 冪等標記寫入失敗: " + e.getMessage());
+        }
+    }
+
+    private static String processedKey(String orderSn) {
+        return "order:processed:" + orderSn;
+    }
+}
@@ -0,0 +1,274 @@
+package com.ticket.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ticket.dto.TicketPurchaseMessage;
+import com.ticket.entity.Order;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 訂單狀態記錄與結果推送
+ * 預扣庫存時由 reserve_stock.lua（本地引擎為 RedisService.recordReservation）寫入 PENDING 記錄（order:status:{orderSn} hash：
+ * status / ticketId / userId / quantity / createdAt），消費者處理完改為 PAID / FAILED 並透過 pub/sub 廣播，
+ * 持有該訂單長輪詢連線的節點收到後立即回應。查詢先讀這筆記錄，過期後才回資料庫。
+ */
+@Service
+public class OrderStatusService implements MessageListener {
+
+    // 訂單結果廣播頻道，訊息內容即狀態 JSON
+    public static final String ORDER_STATUS_CHANNEL = "order:status:events";
+
+    private static final String PENDING = "PENDING";
+
+    // pipeline 內無法 EVALSHA 後退回，直接帶腳本內容 EVAL（腳本很短）
+    private static final String SETTLE_RESERVATION_SCRIPT = loadScript("scripts/settle_reservation.lua");
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Set<DeferredResult<Map<String, Object>>>> waiters = new ConcurrentHashMap<>();
+
+    @Value("${ticket.order-status.ttl-seconds:3600}")
+    private long ttlSeconds;
+
+    public OrderStatusService(StringRedisTemplate stringRedisTemplate, ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        Gauge.builder("ticket.order-status.waiters", waiters, Map::size)
+                .description("等待訂單結果的長輪詢連線數")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 發布訂單結果（pipeline：HSET + EXPIRE + 結清預扣 + PUBLISH），交易提交後呼叫
+     * 寫入失敗不影響訂單本身，記錄過期後查詢會回到資料庫
+     */
+    public void publish(Collection<OrderStatusUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        String updatedAt = String.valueOf(System.currentTimeMillis());
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (OrderStatusUpdate update : updates) {
+                    String key = statusKey(update.orderSn());
+                    stringConnection.hMSet(key, Map.of(
+                        "status", update.status().name(),
+                        "message", update.message(),
+                        "updatedAt", updatedAt
+                    ));
+                    stringConnection.expire(key, ttlSeconds);
+                    // 訂單已有結果：移出預扣期限 zset，並結清在途數量（每單只結清一次）
+                    stringConnection.eval(SETTLE_RESERVATION_SCRIPT, ReturnType.INTEGER, 2,
+                            RedisService.RESERVATION_DEADLINES_KEY, RedisService.inflightKey(update.ticketId()),
+                            update.orderSn(), String.valueOf(update.quantity()));
+                    stringConnection.publish(ORDER_STATUS_CHANNEL, toJson(update.toBody()));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            System.err.println("⚠️ 訂單結果推送失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 只結清預扣（移出期限 zset + 扣回在途數量，每單只生效一次），不改訂單狀態
+     * 給狀態記錄已是最終結果、但上次結清沒執行到的訂單使用
+     */
+    public void settle(Collection<OrderStatusUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (OrderStatusUpdate update : updates) {
+                stringConnection.eval(SETTLE_RESERVATION_SCRIPT, ReturnType.INTEGER, 2,
+                        RedisService.RESERVATION_DEADLINES_KEY, RedisService.inflightKey(update.ticketId()),
+                        update.orderSn(), String.valueOf(update.quantity()));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 讀取 Redis 訂單狀態記錄，記錄不存在（未下單或已過期）回傳 null
+     * PENDING 對外回應 processing，與資料庫尚無訂單時的回應一致
+     */
+    public Map<String, Object> getCachedStatus(String orderSn) {
+        Map<Object, Object> record = stringRedisTemplate.opsForHash().entries(statusKey(orderSn));
+        if (record.isEmpty() || record.get("status") == null) {
+            return null;
+        }
+
+        String status = record.get("status").toString();
+        Map<String, Object> body = new LinkedHashMap<>();
+        if (PENDING.equals(status)) {
+            body.putAll(processing(orderSn));
+        } else {
+            body.put("status", status.toLowerCase());
+            body.put("orderSn", orderSn);
+            body.put("message", record.getOrDefault("message", ""));
+        }
+        copyLong(record, "ticketId", body);
+        copyLong(record, "quantity", body);
+        copyLong(record, "createdAt", body);
+        return body;
+    }
+
+    /**
+     * 長輪詢等待訂單結果，逾時回傳 processing
+     */
+    public DeferredResult<Map<String, Object>> await(String orderSn, long timeoutMillis) {
+        DeferredResult<Map<String, Object>> result = new DeferredResult<>(timeoutMillis, processing(orderSn));
+
+        Map<String, Object> cached = getCachedStatus(orderSn);
+        if (isFinal(cached)) {
+            result.setResult(cached);
+            return result;
+        }
+
+        waiters.computeIfAbsent(orderSn, key -> ConcurrentHashMap.newKeySet()).add(result);
+        result.onCompletion(() -> removeWaiter(orderSn, result));
+
+        // 註冊前結果可能剛好發布，再查一次避免漏接
+        cached = getCachedStatus(orderSn);
+        if (isFinal(cached)) {
+            result.setResult(cached);
+        }
+        return result;
+    }
+
+    /**
+     * 接收其他節點（或本節點）消費者發布的訂單結果
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Map<String, Object> body = fromJson(new String(message.getBody(), StandardCharsets.UTF_8));
+        Object orderSn = body.get("orderSn");
+        if (orderSn == null) {
+            return;
+        }
+        Set<DeferredResult<Map<String, Object>>> pending = waiters.remove(orderSn.toString());
+        if (pending != null) {
+            pending.forEach(result -> result.setResult(body));
+        }
+    }
+
+    private void removeWaiter(String orderSn, DeferredResult<Map<String, Object>> result) {
+        waiters.computeIfPresent(orderSn, (key, set) -> {
+            set.remove(result);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static boolean isFinal(Map<String, Object> status) {
+        return status != null && !"processing".equals(status.get("status"));
+    }
+
+    private static void copyLong(Map<Object, Object> record, String field, Map<String, Object> body) {
+        Object value = record.get(field);
+        if (value != null) {
+            body.put(field, Long.valueOf(value.toString()));
+        }
+    }
+
+    private static Map<String, Object> processing(String orderSn) {
+        return Map.of(
+            "status", "processing",
+            "orderSn", orderSn,
+            "message", "訂單正在處理中，請稍後刷新"
+        );
+    }
+
+    private String toJson(Map<String, Object> body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("訂單結果序列化失敗: " + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, Map.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("訂單結果解析失敗: " + e.getMessage());
+        }
+    }
+
+    private static String loadScript(String path) {
+        try {
+            return new ClassPathResource(path).getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("無法載入腳本: " + path, e);
+        }
+    }
+
+    public static String statusKey(String orderSn) {
+        return "order:status:" + orderSn;
+    }
+
+    /**
+     * 訂單結果，對外回應的 status 與資料庫訂單狀態一致（小寫）
+     * ticketId / quantity 用於結清該票券的在途預扣數量
+     */
+    public record OrderStatusUpdate(String orderSn, Long ticketId, Integer quantity,
+                                    Order.OrderStatus status, String message) {
+
+        public static OrderStatusUpdate paid(TicketPurchaseMessage message) {
+            return new OrderStatusUpdate(message.getOrderSn(), message.getTicketId(), message.getQuantity(),
+                    Order.OrderStatus.PAID, "搶票成功");
+        }
+
+        public static OrderStatusUpdate failed(TicketPurchaseMessage message, String reason) {
+            return new OrderStatusUpdate(message.getOrderSn(), message.getTicketId(), message.getQuantity(),
+                    Order.OrderStatus.FAILED, reason);
+        }
+
+        public static OrderStatusUpdate expired(String orderSn, Long ticketId, Integer quantity) {
+            return new OrderStatusUpdate(orderSn, ticketId, quantity, Order.OrderStatus.EXPIRED, "預扣逾時，已釋放庫存");
+        }
+
+        /**
+         * 以資料庫中的訂單結果補推送（Redis 狀態記錄遺失或沒更新到）
+         */
+        public static OrderStatusUpdate of(String orderSn, Long ticketId, Integer quantity,
+                                           Order.OrderStatus status, String remarks) {
+            String message = switch (status) {
+                case PAID -> "搶票成功";
+                case EXPIRED -> "預扣逾時，已釋放庫存";
+                default -> remarks != null ? remarks : "搶票失敗";
+            };
+            return new OrderStatusUpdate(orderSn, ticketId, quantity, status, message);
+        }
+
+        Map<String, Object> toBody() {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("status", status.name().toLowerCase());
+            body.put("orderSn", orderSn);
+            body.put("message", message);
+            return body;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.ticket.service;
+
+import com.ticket.entity.OutboxEvent;
+import com.ticket.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 外寄箱轉送
+ * 每批在一個交易內以 FOR UPDATE SKIP LOCKED 鎖定最舊的事件，套用到 Redis 後刪除；
+ * 多節點同時轉送互不阻塞。套用以事件 ID 去重，交易在 Redis 套用後、提交前失敗時下一輪重做也不會重複扣減。
+ * 一批滿載時立即處理下一批，否則休眠 poll-interval-ms。
+ */
+@Service
+public class OutboxRelay {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final RedisService redisService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter relayedCounter;
+    private final Timer lagTimer;
+    private volatile double lagSeconds;
+
+    @Value("${ticket.outbox.relay.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ticket.outbox.relay.batch-size:500}")
+    private int batchSize;
+
+    @Value("${ticket.outbox.relay.poll-interval-ms:100}")
+    private long pollIntervalMillis;
+
+    private volatile boolean running;
+    private Thread relayThread;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, RedisService redisService,
+                       TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.redisService = redisService;
+        this.transactionTemplate = transactionTemplate;
+
+        this.relayedCounter = meterRegistry.counter("ticket.outbox.relayed");
+        this.lagTimer = Timer.builder("ticket.outbox.relay.lag")
+                .description("事件寫入到套用至 Redis 的延遲")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("ticket.outbox.lag.seconds", this, relay -> relay.lagSeconds)
+                .description("上一批中最舊事件的等待秒數，外寄箱清空時為 0")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        relayThread = new Thread(this::runLoop, "outbox-relay");
+        relayThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (relayThread != null) {
+            relayThread.interrupt();
+            relayThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                if (relayBatch() < batchSize) {
+                    Thread.sleep(pollIntervalMillis);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                System.err.println("💥 外寄箱轉送異常: " + e.getMessage());
+                try {
+                    Thread.sleep(pollIntervalMillis);
+                } catch (InterruptedException interrupted) {
+                    running = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * 轉送一批，回傳處理的事件數
+     */
+    public int relayBatch() {
+        Integer relayed = transactionTemplate.execute(status -> {
+            List<OutboxEvent> events = outboxEventRepository.lockBatch(batchSize);
+            if (events.isEmpty()) {
+                lagSeconds = 0;
+                return 0;
+            }
+            redisService.applyStockDecrements(events);
+            outboxEventRepository.deleteAllInBatch(events);
+
+            LocalDateTime now = LocalDateTime.now();
+            for (OutboxEvent event : events) {
+                lagTimer.record(Duration.between(event.getCreatedAt(), now));
+            }
+            lagSeconds = Duration.between(events.get(0).getCreatedAt(), now).toMillis() / 1000.0;
+            return events.size();
+        });
+        int count = relayed == null ? 0 : relayed;
+        relayedCounter.increment(count);
+        return count;
+    }
+}
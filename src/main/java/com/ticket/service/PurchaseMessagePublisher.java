@@ -0,0 +1,234 @@
+package com.ticket.service;
+
+import com.ticket.dto.TicketPurchaseMessage;
+import com.ticket.util.PurchaseShardRouter;
+import com.ticket.util.ReservationJournal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 搶票消息異步發送器
+ * HTTP 執行緒只把消息放進環形緩衝區，由專用發送執行緒批量發送並等待 publisher confirm；
+ * 被 nack、無法路由或從未交給 channel 的消息自動歸還庫存；確認逾時的消息可能已送達，
+ * 不歸還，交給預扣逾時回收（以訂單號唯一索引與消費者仲裁）處理。
+ * 每筆預扣在預扣紀錄日誌中登記，確認或歸還後標記結束；啟動時把上次未結束的預扣重發（仍在保留時間內），
+ * 無法重發的同樣交給預扣逾時回收，不直接歸還（上次可能已送達）。
+ */
+@Service
+public class PurchaseMessagePublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final InventoryEngine inventoryEngine;
+    private final OrderStatusService orderStatusService;
+    private final PurchaseShardRouter purchaseShardRouter;
+    private final ReservationJournalService reservationJournalService;
+    private final BlockingQueue<TicketPurchaseMessage> buffer;
+    private final Map<String, PendingConfirm> pendingConfirms = new ConcurrentHashMap<>();
+
+    private final Timer confirmLatency;
+    private final Counter nackCounter;
+    private final Counter timeoutCounter;
+    private final Counter rejectedCounter;
+    private final Counter recoveredCounter;
+
+    @Value("${ticket.mq.publisher.batch-size:100}")
+    private int batchSize;
+
+    @Value("${ticket.mq.publisher.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMillis;
+
+    @Value("${ticket.reservation.ttl-seconds:900}")
+    private long reservationTtlSeconds;
+
+    private volatile boolean running;
+    private Thread publisherThread;
+
+    public PurchaseMessagePublisher(RabbitTemplate rabbitTemplate, InventoryEngine inventoryEngine,
+                                    OrderStatusService orderStatusService,
+                                    PurchaseShardRouter purchaseShardRouter,
+                                    ReservationJournalService reservationJournalService, MeterRegistry meterRegistry,
+                                    @Value("${ticket.mq.publisher.buffer-size:10000}") int bufferSize) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.inventoryEngine = inventoryEngine;
+        this.orderStatusService = orderStatusService;
+        this.purchaseShardRouter = purchaseShardRouter;
+        this.reservationJournalService = reservationJournalService;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+
+        this.confirmLatency = Timer.builder("ticket.publisher.confirm.latency")
+                .description("消息發送到收到 broker 確認的耗時")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.nackCounter = meterRegistry.counter("ticket.publisher.nacks");
+        this.timeoutCounter = meterRegistry.counter("ticket.publisher.confirm.timeouts");
+        this.rejectedCounter = meterRegistry.counter("ticket.publisher.buffer.rejected");
+        this.recoveredCounter = meterRegistry.counter("ticket.reservation.journal.recovered");
+        Gauge.builder("ticket.publisher.buffer.depth", buffer, BlockingQueue::size).register(meterRegistry);
+        Gauge.builder("ticket.publisher.pending.confirms", pendingConfirms, Map::size).register(meterRegistry);
+
+        this.rabbitTemplate.setMandatory(true);
+        this.rabbitTemplate.setConfirmCallback(this::onConfirm);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        publisherThread = new Thread(this::runLoop, "purchase-publisher");
+        publisherThread.start();
+        recover();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        publisherThread.interrupt();
+        publisherThread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * 放入發送緩衝區，緩衝區已滿時回傳 false（呼叫方負責歸還庫存）
+     */
+    public boolean enqueue(TicketPurchaseMessage message) {
+        if (buffer.offer(message)) {
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+
+    /**
+     * 上次停機時已預扣、尚未確認的訂單：仍在保留時間內重新發送（消費者冪等，重複送達不會重複成單）。
+     * 已超過保留時間或緩衝區已滿的不歸還：沒有確認不代表沒送達，消費者可能已成單；
+     * 預扣期限仍在 zset 中，交給 ReservationExpiryService 以訂單號唯一索引仲裁
+     */
+    void recover() {
+        long expiredBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(reservationTtlSeconds);
+        for (ReservationJournal.Entry entry : reservationJournalService.takeUnresolved()) {
+            TicketPurchaseMessage message = new TicketPurchaseMessage(entry.orderSn(), entry.ticketId(),
+                    entry.userId(), entry.quantity());
+            if (entry.reservedAt() > expiredBefore && enqueue(message)) {
+                System.out.println("🔁 重發未確認的預扣: " + entry.orderSn());
+            } else {
+                reservationJournalService.acknowledged(entry.orderSn());
+                System.out.println("⌛ 未確認的預扣交給逾時回收: " + entry.orderSn());
+            }
+            recoveredCounter.increment();
+        }
+    }
+
+    private void runLoop() {
+        List<TicketPurchaseMessage> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                TicketPurchaseMessage first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    buffer.drainTo(batch, batchSize - 1);
+                    publishBatch(batch);
+                    batch.clear();
+                }
+                expireOverdueConfirms();
+            } catch (InterruptedException e) {
+                // 停機時不再阻塞等待，把緩衝區剩餘消息發完再退出
+                running = false;
+            } catch (Exception e) {
+                // 未送出的消息已在 publishBatch 內歸還，已送出的等確認或逾時回收
+                System.err.println("💥 消息發送異常: " + e.getMessage());
+                batch.clear();
+            }
+        }
+    }
+
+    // 整批共用同一個 channel 發送；發送失敗時只歸還還沒交給 channel 的消息
+    private void publishBatch(List<TicketPurchaseMessage> batch) {
+        int[] sent = {0};
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (TicketPurchaseMessage message : batch) {
+                    CorrelationData correlation = new CorrelationData(message.getOrderSn());
+                    pendingConfirms.put(message.getOrderSn(), new PendingConfirm(message, System.nanoTime()));
+                    operations.convertAndSend(PurchaseShardRouter.EXCHANGE,
+                            purchaseShardRouter.routingKey(message.getTicketId()), message, correlation);
+                    sent[0]++;
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // 前 sent[0] 筆已送出，可能已被確認或仍在途中，不能歸還；拋出例外的那筆與之後的都沒送到 broker
+            for (TicketPurchaseMessage message : batch.subList(sent[0], batch.size())) {
+                pendingConfirms.remove(message.getOrderSn());
+                compensate(message);
+            }
+            throw e;
+        }
+    }
+
+    private void onConfirm(CorrelationData correlation, boolean ack, String cause) {
+        if (correlation == null) {
+            return;
+        }
+        PendingConfirm pending = pendingConfirms.remove(correlation.getId());
+        if (pending == null) {
+            return; // 已逾時補償過
+        }
+        confirmLatency.record(System.nanoTime() - pending.sentAt(), TimeUnit.NANOSECONDS);
+
+        if (ack && correlation.getReturned() == null) {
+            reservationJournalService.acknowledged(correlation.getId());
+            System.out.println("✅ 搶票請求已發送MQ: " + correlation.getId());
+            return;
+        }
+
+        nackCounter.increment();
+        String reason = ack ? "無法路由: " + correlation.getReturned().getReplyText() : cause;
+        System.out.println("❌ MQ 發送失敗，歸還庫存: " + correlation.getId() + ", 原因: " + reason);
+        compensate(pending.message());
+        // broker 明確拒收，訂單不會再被消費；逾時則可能已送達，不推送結果
+        orderStatusService.publish(List.of(OrderStatusService.OrderStatusUpdate.failed(pending.message(), "系統繁忙，請重試")));
+    }
+
+    /**
+     * 確認逾時不代表沒送達（消費者可能已成單），不歸還庫存：
+     * 預扣期限仍在 zset 中，由 ReservationExpiryService 以訂單號唯一索引與消費者仲裁，確定沒成單才歸還
+     */
+    private void expireOverdueConfirms() {
+        long now = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMillis);
+        pendingConfirms.forEach((orderSn, pending) -> {
+            if (now - pending.sentAt() > timeout && pendingConfirms.remove(orderSn, pending)) {
+                timeoutCounter.increment();
+                // 交給逾時回收，重啟時不必再重發或歸還
+                reservationJournalService.acknowledged(orderSn);
+                System.out.println("⌛ MQ 確認逾時，交給預扣逾時回收: " + orderSn);
+            }
+        });
+    }
+
+    private void compensate(TicketPurchaseMessage message) {
+        try {
+            inventoryEngine.release(message.getOrderSn(), message.getTicketId(), message.getUserId(), message.getQuantity());
+            reservationJournalService.released(message.getOrderSn());
+        } catch (Exception e) {
+            System.err.println("💥 歸還庫存失敗: " + message.getOrderSn() + ", 錯誤: " + e.getMessage());
+        }
+    }
+
+    private record PendingConfirm(TicketPurchaseMessage message, long sentAt) {
+    }
+}
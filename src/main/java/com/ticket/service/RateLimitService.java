@@ -0,0 +1,121 @@
+package com.ticket.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 搶票請求限流
+ * 先過本地令牌桶（單節點洪水直接擋下，不碰網路），再以一次 Lua 呼叫同時檢查 Redis 上的
+ * 用戶桶與票券桶（全叢集共用）。Redis 不可用時放行，限流不應讓搶票整個停擺。
+ */
+@Service
+public class RateLimitService {
+
+    private static final RedisScript<Long> TOKEN_BUCKET_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/token_bucket.lua"), Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Cache<String, LocalBucket> localBuckets;
+
+    private final Counter localRejectedCounter;
+    private final Counter redisRejectedCounter;
+
+    @Value("${ticket.rate-limit.local.permits-per-second:20}")
+    private double localPermitsPerSecond;
+
+    @Value("${ticket.rate-limit.local.burst:40}")
+    private double localBurst;
+
+    @Value("${ticket.rate-limit.user.permits-per-second:5}")
+    private double userPermitsPerSecond;
+
+    @Value("${ticket.rate-limit.user.burst:10}")
+    private double userBurst;
+
+    @Value("${ticket.rate-limit.ticket.permits-per-second:2000}")
+    private double ticketPermitsPerSecond;
+
+    @Value("${ticket.rate-limit.ticket.burst:4000}")
+    private double ticketBurst;
+
+    public RateLimitService(StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry,
+                            @Value("${ticket.rate-limit.local.max-clients:100000}") long maxClients) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        // 閒置一分鐘的桶早已補滿，丟掉等同重新開始
+        this.localBuckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofMinutes(1))
+                .build();
+        this.localRejectedCounter = meterRegistry.counter("ticket.rate-limit.rejected", "layer", "local");
+        this.redisRejectedCounter = meterRegistry.counter("ticket.rate-limit.rejected", "layer", "redis");
+    }
+
+    /**
+     * 嘗試取得一次搶票額度，放行回傳 0，否則回傳建議重試等待毫秒數
+     */
+    public long tryAcquire(String client, Long ticketId) {
+        long localWait = localBuckets.get(client, key -> new LocalBucket(localBurst))
+                .tryAcquire(localPermitsPerSecond, localBurst, System.nanoTime());
+        if (localWait > 0) {
+            localRejectedCounter.increment();
+            return localWait;
+        }
+
+        Long wait;
+        try {
+            wait = stringRedisTemplate.execute(TOKEN_BUCKET_SCRIPT,
+                    List.of("ratelimit:user:" + client, "ratelimit:ticket:" + ticketId),
+                    String.valueOf(userPermitsPerSecond), String.valueOf(userBurst),
+                    String.valueOf(ticketPermitsPerSecond), String.valueOf(ticketBurst));
+        } catch (Exception e) {
+            System.err.println("⚠️ 限流檢查失敗，放行: " + e.getMessage());
+            return 0;
+        }
+        if (wait != null && wait > 0) {
+            redisRejectedCounter.increment();
+            return wait;
+        }
+        return 0;
+    }
+
+    /**
+     * 本地令牌桶，同一 client 的請求才會競爭同一把鎖
+     */
+    static final class LocalBucket {
+        // 不用 synchronized，虛擬執行緒等鎖時不會釘住載體執行緒
+        private final ReentrantLock lock = new ReentrantLock();
+        private double tokens;
+        private long lastNanos;
+
+        LocalBucket(double capacity) {
+            this.tokens = capacity;
+            this.lastNanos = System.nanoTime();
+        }
+
+        long tryAcquire(double permitsPerSecond, double capacity, long nowNanos) {
+            lock.lock();
+            try {
+                tokens = Math.min(capacity, tokens + (nowNanos - lastNanos) / 1e9 * permitsPerSecond);
+                lastNanos = nowNanos;
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return 0;
+                }
+                return Math.max(1, (long) Math.ceil((1 - tokens) * 1000 / permitsPerSecond));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.ticket.service;
+
+import com.ticket.dto.ReservationResult;
+import com.ticket.dto.TicketStock;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Redis 庫存引擎（預設），直接委派 RedisService 的 Lua 腳本
+ */
+@Service
+@ConditionalOnProperty(name = "ticket.inventory.engine", havingValue = "redis", matchIfMissing = true)
+public class RedisInventoryEngine implements InventoryEngine {
+
+    private final RedisService redisService;
+
+    public RedisInventoryEngine(RedisService redisService) {
+        this.redisService = redisService;
+    }
+
+    @Override
+    public ReservationResult reserve(String orderSn, Long ticketId, Long userId, Integer quantity) {
+        return redisService.reserveStock(orderSn, ticketId, userId, quantity);
+    }
+
+    @Override
+    public Long release(String orderSn, Long ticketId, Long userId, Integer quantity) {
+        return redisService.releaseStock(orderSn, ticketId, userId, quantity);
+    }
+
+    @Override
+    public void setStock(Long ticketId, Integer stock, LocalDateTime saleEndTime) {
+        redisService.setStock(ticketId, stock, saleEndTime);
+    }
+
+    @Override
+    public Integer getStock(Long ticketId) {
+        return redisService.getStock(ticketId);
+    }
+
+    @Override
+    public boolean isSoldOut(Long ticketId) {
+        return redisService.isSoldOut(ticketId);
+    }
+
+    @Override
+    public int warm(List<TicketStock> tickets) {
+        return redisService.warmStocks(tickets);
+    }
+
+    /**
+     * reserve_stock.lua 在同一次往返寫入訂單狀態、預扣期限與在途數量
+     */
+    @Override
+    public boolean recordsReservation() {
+        return true;
+    }
+}
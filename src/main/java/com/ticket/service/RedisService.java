@@ -1,47 +1,323 @@
 // src/main/java/com/ticket/service/RedisService.java
 package com.ticket.service;
 
+import com.ticket.dto.ReservationResult;
+import com.ticket.dto.TicketStock;
+import com.ticket.entity.OutboxEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @Service
 public class RedisService {
 
+    // 庫存變化廣播頻道，訊息格式 "{ticketId}:{stock}"
+    public static final String STOCK_EVENTS_CHANNEL = "ticket:stock:events";
+
+    // 預扣期限 zset，score 為期限 (epoch ms)，member 為訂單號
+    public static final String RESERVATION_DEADLINES_KEY = "reservation:deadlines";
+
+    // 腳本以 EVALSHA 執行，Redis 端無快取時自動退回 EVAL 並載入
+    private static final RedisScript<Long> RESERVE_STOCK_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/reserve_stock.lua"), Long.class);
+    private static final RedisScript<Long> RELEASE_STOCK_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/release_stock.lua"), Long.class);
+    private static final RedisScript<Long> RECONCILE_STOCK_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/reconcile_stock.lua"), Long.class);
+    private static final RedisScript<Long> WARM_STOCK_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/warm_stock.lua"), Long.class);
+    private static final RedisScript<Long> APPLY_STOCK_DECREMENT_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/apply_stock_decrement.lua"), Long.class);
+
     private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${ticket.purchase.max-per-user:0}")
+    private int maxPerUser;
+
+    @Value("${ticket.idempotency.ttl-hours:24}")
+    private long idempotencyTtlHours;
+
+    @Value("${ticket.order-status.ttl-seconds:3600}")
+    private long orderStatusTtlSeconds;
 
-    public RedisService(RedisTemplate<String, Object> redisTemplate) {
+    @Value("${ticket.reservation.ttl-seconds:900}")
+    private long reservationTtlSeconds;
+
+    @Value("${ticket.warmup.ttl-after-sale-end-seconds:3600}")
+    private long ttlAfterSaleEndSeconds;
+
+    public RedisService(RedisTemplate<String, Object> redisTemplate, StringRedisTemplate stringRedisTemplate) {
         this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
     }
 
-    public void setStock(Long ticketId, Integer stock) {
-        String key = "ticket:stock:" + ticketId;
-        redisTemplate.opsForValue().set(key, stock, 1, TimeUnit.HOURS);
+    /**
+     * 設定庫存（覆蓋），保留到銷售結束後 ttl-after-sale-end-seconds；未設定結束時間則不過期
+     * 庫存相關 key 一律經 StringRedisTemplate 讀寫，值為純整數字串，與 Lua 腳本的 INCRBY / DECRBY 一致
+     */
+    public void setStock(Long ticketId, Integer stock, LocalDateTime saleEndTime) {
+        long ttlSeconds = stockTtlSeconds(saleEndTime);
+        if (ttlSeconds > 0) {
+            stringRedisTemplate.opsForValue().set(stockKey(ticketId), String.valueOf(stock), ttlSeconds, TimeUnit.SECONDS);
+        } else {
+            stringRedisTemplate.opsForValue().set(stockKey(ticketId), String.valueOf(stock));
+        }
+        redisTemplate.delete(soldOutKey(ticketId));
+        // 重新初始化即換版本，進行中的對帳修正會因版本不符而放棄
+        stringRedisTemplate.opsForValue().increment(fenceKey(ticketId));
+        stringRedisTemplate.convertAndSend(STOCK_EVENTS_CHANNEL, ticketId + ":" + stock);
     }
 
+    /**
+     * 目前庫存，未初始化回傳 null
+     */
     public Integer getStock(Long ticketId) {
-        String key = "ticket:stock:" + ticketId;
-        Object value = redisTemplate.opsForValue().get(key);
-        return value != null ? (Integer) value : null;
+        String value = stringRedisTemplate.opsForValue().get(stockKey(ticketId));
+        return value != null ? Integer.valueOf(value) : null;
     }
 
-    public Long decrementStock(Long ticketId, Integer quantity) {
-        String key = "ticket:stock:" + ticketId;
-        Long result = redisTemplate.opsForValue().decrement(key, quantity);
-        System.out.println("🔴 Redis 操作: DECR ticket=" + ticketId + ", quantity=" + quantity + ", 結果=" + result);
+    /**
+     * 原子預扣庫存：售罄檢查、每人上限、扣減、記錄用戶已購數量、寫入 PENDING 訂單狀態、登記預扣期限，一次往返完成
+     */
+    public ReservationResult reserveStock(String orderSn, Long ticketId, Long userId, Integer quantity) {
+        long now = System.currentTimeMillis();
+        Long result = stringRedisTemplate.execute(
+                RESERVE_STOCK_SCRIPT,
+                List.of(stockKey(ticketId), soldOutKey(ticketId), purchasedKey(ticketId),
+                        OrderStatusService.statusKey(orderSn), RESERVATION_DEADLINES_KEY, inflightKey(ticketId)),
+                String.valueOf(quantity), String.valueOf(userId), String.valueOf(maxPerUser),
+                STOCK_EVENTS_CHANNEL, String.valueOf(ticketId),
+                String.valueOf(now), String.valueOf(orderStatusTtlSeconds),
+                String.valueOf(reservationDeadline(now)), orderSn);
+
+        if (result == null || result == -1) {
+            return ReservationResult.rejected(ReservationResult.Status.NOT_INITIALIZED);
+        }
+        if (result == -2) {
+            return ReservationResult.rejected(ReservationResult.Status.SOLD_OUT);
+        }
+        if (result == -3) {
+            return ReservationResult.rejected(ReservationResult.Status.LIMIT_EXCEEDED);
+        }
+
+        System.out.println("🔴 Redis 操作: RESERVE ticket=" + ticketId + ", quantity=" + quantity + ", 結果=" + result);
+        return ReservationResult.success(result);
+    }
+
+    /**
+     * 補寫預扣記錄（PENDING 訂單狀態、預扣期限、在途數量），與 reserve_stock.lua 寫入的內容相同
+     * 給不經 Redis 扣庫存的引擎使用（pipeline 一次往返）
+     */
+    public void recordReservation(String orderSn, Long ticketId, Long userId, Integer quantity) {
+        long now = System.currentTimeMillis();
+        String statusKey = OrderStatusService.statusKey(orderSn);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.hMSet(statusKey, Map.of(
+                    "status", "PENDING",
+                    "ticketId", String.valueOf(ticketId),
+                    "userId", String.valueOf(userId),
+                    "quantity", String.valueOf(quantity),
+                    "createdAt", String.valueOf(now)));
+            stringConnection.expire(statusKey, orderStatusTtlSeconds);
+            stringConnection.zAdd(RESERVATION_DEADLINES_KEY, reservationDeadline(now), orderSn);
+            stringConnection.incrBy(inflightKey(ticketId), quantity);
+            return null;
+        });
+    }
+
+    /**
+     * 預扣期限 (epoch ms)
+     */
+    public long reservationDeadline(long reservedAtMillis) {
+        return reservedAtMillis + TimeUnit.SECONDS.toMillis(reservationTtlSeconds);
+    }
+
+    /**
+     * 歸還預扣庫存（補償），同時清除售罄標記與用戶已購數量
+     * 每個訂單只會歸還一次，重複呼叫回傳 null
+     */
+    public Long releaseStock(String orderSn, Long ticketId, Long userId, Integer quantity) {
+        Long result = stringRedisTemplate.execute(
+                RELEASE_STOCK_SCRIPT,
+                List.of(stockKey(ticketId), soldOutKey(ticketId),
+                        purchasedKey(ticketId), releasedKey(orderSn)),
+                String.valueOf(quantity), String.valueOf(userId),
+                STOCK_EVENTS_CHANNEL, String.valueOf(ticketId),
+                String.valueOf(TimeUnit.HOURS.toSeconds(idempotencyTtlHours)));
+        if (result == null || result == -1) {
+            System.out.println("⏭️ Redis 操作: RELEASE 已執行過，略過 order=" + orderSn);
+            return null;
+        }
+        System.out.println("🟢 Redis 操作: RELEASE ticket=" + ticketId + ", quantity=" + quantity + ", 結果=" + result);
         return result;
     }
 
-    public Long incrementStock(Long ticketId, Integer quantity) {
-        String key = "ticket:stock:" + ticketId;
-        Long result = redisTemplate.opsForValue().increment(key, quantity);
-        System.out.println("🟢 Redis 操作: INCR ticket=" + ticketId + ", quantity=" + quantity + ", 結果=" + result);
+    /**
+     * 批量預熱庫存（pipeline EVALSHA，一批一次往返），只寫入不存在的 key，回傳實際寫入筆數
+     * 寫入值為資料庫庫存扣掉在途數量
+     */
+    public int warmStocks(List<TicketStock> tickets) {
+        if (tickets.isEmpty()) {
+            return 0;
+        }
+        // pipeline 內無法在 NOSCRIPT 時退回 EVAL，先確保腳本已載入
+        String sha = stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                connection.scriptingCommands().scriptLoad(WARM_STOCK_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (TicketStock ticket : tickets) {
+                stringConnection.evalSha(sha, ReturnType.INTEGER, 3,
+                        stockKey(ticket.id()), inflightKey(ticket.id()), soldOutKey(ticket.id()),
+                        String.valueOf(ticket.availableStock()), String.valueOf(stockTtlSeconds(ticket.saleEndTime())),
+                        STOCK_EVENTS_CHANNEL, String.valueOf(ticket.id()));
+            }
+            return null;
+        });
+        int loaded = 0;
+        for (Object result : results) {
+            if (Long.valueOf(1).equals(result)) {
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 批量套用外寄箱的資料庫扣減（pipeline EVALSHA，一批一次往返），以事件 ID 去重，重複套用不會多扣
+     * 回傳實際扣減的筆數
+     */
+    public int applyStockDecrements(List<OutboxEvent> events) {
+        if (events.isEmpty()) {
+            return 0;
+        }
+        String sha = stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                connection.scriptingCommands().scriptLoad(APPLY_STOCK_DECREMENT_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+        String markerTtl = String.valueOf(TimeUnit.HOURS.toSeconds(idempotencyTtlHours));
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (OutboxEvent event : events) {
+                stringConnection.evalSha(sha, ReturnType.INTEGER, 4,
+                        stockKey(event.getTicketId()), soldOutKey(event.getTicketId()),
+                        "outbox:applied:" + event.getId(), fenceKey(event.getTicketId()),
+                        String.valueOf(event.getQuantity()), markerTtl, STOCK_EVENTS_CHANNEL,
+                        String.valueOf(event.getTicketId()));
+            }
+            return null;
+        });
+        int applied = 0;
+        for (Object result : results) {
+            if (result instanceof Long value && value >= 0) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * 庫存 key 保留秒數：銷售結束後再保留一段時間，0 表示不過期
+     */
+    private long stockTtlSeconds(LocalDateTime saleEndTime) {
+        if (saleEndTime == null) {
+            return 0;
+        }
+        long seconds = Duration.between(LocalDateTime.now(), saleEndTime).getSeconds() + ttlAfterSaleEndSeconds;
+        return Math.max(1, seconds);
+    }
+
+    /**
+     * 批量讀取對帳快照（每張票券 MGET 庫存 / 在途數量 / 版本，pipeline 一次往返）
+     */
+    public List<StockSnapshot> snapshotStocks(List<Long> ticketIds) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            ticketIds.forEach(ticketId ->
+                    stringConnection.mGet(stockKey(ticketId), inflightKey(ticketId), fenceKey(ticketId)));
+            return null;
+        });
+        List<StockSnapshot> snapshots = new ArrayList<>(ticketIds.size());
+        for (int i = 0; i < ticketIds.size(); i++) {
+            @SuppressWarnings("unchecked")
+            List<String> values = (List<String>) results.get(i);
+            snapshots.add(new StockSnapshot(ticketIds.get(i), values.get(0), values.get(1), values.get(2)));
+        }
+        return snapshots;
+    }
+
+    /**
+     * 以快照為前提修正庫存：快照之後庫存、在途數量或版本有任何變動就放棄，回傳 null
+     */
+    public Long reconcileStock(StockSnapshot snapshot, long correctedStock) {
+        Long ticketId = snapshot.ticketId();
+        Long result = stringRedisTemplate.execute(
+                RECONCILE_STOCK_SCRIPT,
+                List.of(stockKey(ticketId), inflightKey(ticketId), fenceKey(ticketId), soldOutKey(ticketId)),
+                nullToEmpty(snapshot.stock()), nullToEmpty(snapshot.inflight()), nullToEmpty(snapshot.fence()),
+                String.valueOf(correctedStock), STOCK_EVENTS_CHANNEL, String.valueOf(ticketId));
+        if (result == null || result < 0) {
+            return null;
+        }
+        System.out.println("🛠️ Redis 操作: RECONCILE ticket=" + ticketId + ", " + snapshot.stock() + " -> " + result);
         return result;
     }
 
+    /**
+     * 是否已標記售罄
+     */
+    public boolean isSoldOut(Long ticketId) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(soldOutKey(ticketId)));
+    }
+
     public void deleteStock(Long ticketId) {
-        String key = "ticket:stock:" + ticketId;
-        redisTemplate.delete(key);
+        redisTemplate.delete(List.of(stockKey(ticketId), soldOutKey(ticketId)));
+    }
+
+    static String stockKey(Long ticketId) {
+        return "ticket:stock:" + ticketId;
+    }
+
+    static String soldOutKey(Long ticketId) {
+        return "ticket:soldout:" + ticketId;
+    }
+
+    public static String inflightKey(Long ticketId) {
+        return "ticket:inflight:" + ticketId;
+    }
+
+    private static String fenceKey(Long ticketId) {
+        return "ticket:stock:fence:" + ticketId;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String purchasedKey(Long ticketId) {
+        return "ticket:purchased:" + ticketId;
+    }
+
+    private static String releasedKey(String orderSn) {
+        return "order:released:" + orderSn;
+    }
+
+    /**
+     * 對帳快照，欄位為 Redis 原始字串，key 不存在時為 null
+     */
+    public record StockSnapshot(Long ticketId, String stock, String inflight, String fence) {
     }
-}
\ No newline at end of file
+}
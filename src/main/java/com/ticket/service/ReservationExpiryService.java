@@ -0,0 +1,255 @@
+package com.ticket.service;
+
+import com.ticket.entity.Order;
+import com.ticket.repository.OrderExpiryRepository;
+import com.ticket.repository.OrderExpiryRepository.ExpiredReservation;
+import com.ticket.repository.OrderExpiryRepository.SettledOrder;
+import com.ticket.service.OrderStatusService.OrderStatusUpdate;
+import com.ticket.util.HierarchicalTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 預扣逾時回收
+ * 預扣成功的訂單登記在 Redis zset（reservation:deadlines，由 reserve_stock.lua 或 RedisService.recordReservation 寫入），
+ * 本節點另外放進分層時間輪，到期時 O(1) 取出，不必輪詢；zset 則定期掃描兜底
+ * （其他節點下的單、節點重啟後時間輪遺失的項目）。
+ *
+ * 到期訂單整批寫入 EXPIRED（order_sn 唯一索引與消費者仲裁誰先成單），
+ * 確定過期的才歸還 Redis 庫存並推送結果；消費者已先成單、或狀態記錄遺失的，以資料庫結果補推送，
+ * 一律經 settle_reservation.lua 結清在途數量，不留下虛增的在途預扣。全程只看到期的項目，不掃訂單表。
+ */
+@Service
+public class ReservationExpiryService {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisService redisService;
+    private final InventoryEngine inventoryEngine;
+    private final OrderStatusService orderStatusService;
+    private final OrderIdempotencyService orderIdempotencyService;
+    private final OrderExpiryRepository orderExpiryRepository;
+
+    // 請求執行緒只放進佇列，時間輪只由回收執行緒操作
+    private final Queue<TrackedReservation> newReservations = new ConcurrentLinkedQueue<>();
+    private final HierarchicalTimingWheel<String> wheel;
+    private final long tickMs;
+    private volatile int trackedCount;
+
+    private final Counter expiredCounter;
+
+    @Value("${ticket.reservation.expiry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ticket.reservation.sweep-interval-ms:5000}")
+    private long sweepIntervalMillis;
+
+    @Value("${ticket.reservation.sweep-batch-size:500}")
+    private int batchSize;
+
+    private volatile boolean running;
+    private Thread expiryThread;
+
+    public ReservationExpiryService(StringRedisTemplate stringRedisTemplate, RedisService redisService,
+                                    InventoryEngine inventoryEngine, OrderStatusService orderStatusService,
+                                    OrderIdempotencyService orderIdempotencyService,
+                                    OrderExpiryRepository orderExpiryRepository, MeterRegistry meterRegistry,
+                                    @Value("${ticket.reservation.wheel-tick-ms:100}") long tickMs,
+                                    @Value("${ticket.reservation.wheel-size:512}") int wheelSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisService = redisService;
+        this.inventoryEngine = inventoryEngine;
+        this.orderStatusService = orderStatusService;
+        this.orderIdempotencyService = orderIdempotencyService;
+        this.orderExpiryRepository = orderExpiryRepository;
+        this.tickMs = tickMs;
+        this.wheel = new HierarchicalTimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+
+        this.expiredCounter = meterRegistry.counter("ticket.reservation.expired");
+        Gauge.builder("ticket.reservation.tracked", this, service -> service.trackedCount)
+                .description("本節點時間輪中等待到期的預扣數")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        expiryThread = new Thread(this::runLoop, "reservation-expiry");
+        expiryThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (expiryThread != null) {
+            expiryThread.interrupt();
+            expiryThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * 登記本節點剛預扣成功的訂單
+     */
+    public void track(String orderSn) {
+        if (enabled) {
+            newReservations.offer(new TrackedReservation(orderSn,
+                    redisService.reservationDeadline(System.currentTimeMillis())));
+        }
+    }
+
+    private void runLoop() {
+        Set<String> due = new LinkedHashSet<>();
+        long nextSweep = 0;
+        while (running) {
+            try {
+                long now = System.currentTimeMillis();
+
+                TrackedReservation reservation;
+                while ((reservation = newReservations.poll()) != null) {
+                    if (!wheel.add(reservation.orderSn(), reservation.deadline())) {
+                        due.add(reservation.orderSn());
+                    }
+                }
+                wheel.advance(now, due::add);
+                trackedCount = wheel.size();
+
+                // zset 兜底：掃到滿批就下一輪繼續，否則等下個週期
+                if (now >= nextSweep) {
+                    Set<String> overdue = stringRedisTemplate.opsForZSet()
+                            .rangeByScore(RedisService.RESERVATION_DEADLINES_KEY, 0, now, 0, batchSize);
+                    if (overdue != null) {
+                        due.addAll(overdue);
+                    }
+                    nextSweep = overdue != null && overdue.size() >= batchSize ? now : now + sweepIntervalMillis;
+                }
+
+                List<String> candidates = new ArrayList<>(due);
+                due.clear();
+                for (int from = 0; from < candidates.size(); from += batchSize) {
+                    expire(candidates.subList(from, Math.min(from + batchSize, candidates.size())), now);
+                }
+
+                Thread.sleep(tickMs);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                // 未處理的項目仍在 zset 裡，下個掃描週期會再撿回來
+                System.err.println("💥 預扣逾時回收異常: " + e.getMessage());
+                due.clear();
+            }
+        }
+    }
+
+    /**
+     * 回收一批候選訂單，回傳實際過期的筆數
+     */
+    int expire(List<String> candidates, long now) {
+        // 1. 只處理仍在 zset 且已到期的（已成單的在推送結果時就移出 zset 了）
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            candidates.forEach(orderSn -> stringConnection.zScore(RedisService.RESERVATION_DEADLINES_KEY, orderSn));
+            return null;
+        });
+        List<String> overdue = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            Object score = scores.get(i);
+            if (score != null && ((Double) score) <= now) {
+                overdue.add(candidates.get(i));
+            }
+        }
+        if (overdue.isEmpty()) {
+            return 0;
+        }
+
+        // 2. 從訂單狀態記錄取回票券、用戶、數量
+        List<Object> records = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            overdue.forEach(orderSn -> stringConnection.hMGet(OrderStatusService.statusKey(orderSn),
+                    "status", "ticketId", "userId", "quantity"));
+            return null;
+        });
+        List<ExpiredReservation> pending = new ArrayList<>();
+        // 狀態記錄已是最終結果，但結清（移出 zset + 扣回在途數量）沒執行到
+        List<OrderStatusUpdate> unsettled = new ArrayList<>();
+        // 要回資料庫查結果的：狀態記錄遺失，或仍是 PENDING 但消費者已先成單
+        List<String> lookup = new ArrayList<>();
+        for (int i = 0; i < overdue.size(); i++) {
+            @SuppressWarnings("unchecked")
+            List<String> fields = (List<String>) records.get(i);
+            String orderSn = overdue.get(i);
+            if (fields == null || fields.stream().anyMatch(Objects::isNull)) {
+                lookup.add(orderSn);
+            } else if (!"PENDING".equals(fields.get(0))) {
+                unsettled.add(OrderStatusUpdate.of(orderSn, Long.valueOf(fields.get(1)), Integer.valueOf(fields.get(3)),
+                        Order.OrderStatus.valueOf(fields.get(0)), null));
+            } else {
+                pending.add(new ExpiredReservation(orderSn, Long.valueOf(fields.get(1)),
+                        Long.valueOf(fields.get(2)), Integer.valueOf(fields.get(3))));
+            }
+        }
+
+        // 3. 整批寫入 EXPIRED，消費者已成單的不會被覆蓋
+        Set<String> expiredSns = new HashSet<>(orderExpiryRepository.insertExpired(pending));
+
+        // 4. 確定過期的才歸還庫存（每單只歸還一次）
+        List<OrderStatusUpdate> updates = new ArrayList<>();
+        int expired = 0;
+        for (ExpiredReservation reservation : pending) {
+            if (expiredSns.contains(reservation.orderSn())) {
+                inventoryEngine.release(reservation.orderSn(), reservation.ticketId(),
+                        reservation.userId(), reservation.quantity());
+                updates.add(OrderStatusUpdate.expired(reservation.orderSn(), reservation.ticketId(), reservation.quantity()));
+                expired++;
+            } else {
+                lookup.add(reservation.orderSn());
+            }
+        }
+
+        // 5. 已有結果的訂單以資料庫為準補推送：publish 同時結清在途數量，長輪詢也會收到結果
+        Set<String> lost = new LinkedHashSet<>(lookup);
+        for (SettledOrder order : orderExpiryRepository.findSettled(lookup)) {
+            lost.remove(order.orderSn());
+            updates.add(OrderStatusUpdate.of(order.orderSn(), order.ticketId(), order.quantity(),
+                    order.status(), order.remarks()));
+        }
+
+        // 晚到的消息在碰資料庫前就略過
+        orderIdempotencyService.markProcessed(expiredSns);
+        orderStatusService.settle(unsettled);
+        orderStatusService.publish(updates);
+        if (!lost.isEmpty()) {
+            // 狀態記錄與訂單都不存在，不知道票券與數量，只能移出 zset（在途數量由對帳漂移指標呈現）
+            System.err.println("⚠️ 預扣記錄遺失，無法回收: " + lost);
+            stringRedisTemplate.opsForZSet().remove(RedisService.RESERVATION_DEADLINES_KEY, lost.toArray());
+        }
+
+        if (expired > 0) {
+            expiredCounter.increment(expired);
+            System.out.println("⏰ 預扣逾時，已歸還庫存: " + expired + " 筆");
+        }
+        return expired;
+    }
+
+    private record TrackedReservation(String orderSn, long deadline) {
+    }
+}
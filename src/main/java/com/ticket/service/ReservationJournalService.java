@@ -0,0 +1,121 @@
+package com.ticket.service;
+
+import com.ticket.dto.TicketPurchaseMessage;
+import com.ticket.util.ReservationJournal;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 預扣紀錄日誌
+ * 預扣成功到 broker 確認之間，訂單只存在記憶體（發送緩衝區 / 等待確認），節點崩潰就遺失、庫存也回不來。
+ * 預扣成功即寫入本地 memory-mapped 日誌，broker 確認或歸還庫存後標記結束；
+ * 重啟時把尚未結束的預扣交給 PurchaseMessagePublisher 重發或歸還。
+ */
+@Service
+public class ReservationJournalService {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ticket.reservation.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ticket.reservation.journal.directory:data/reservations}")
+    private String directory;
+
+    @Value("${ticket.reservation.journal.segment-records:262144}")
+    private int segmentRecords;
+
+    @Value("${ticket.reservation.journal.fsync-interval-ms:10}")
+    private long fsyncIntervalMillis;
+
+    private ReservationJournal journal;
+    private List<ReservationJournal.Entry> unresolved = List.of();
+    private volatile boolean running;
+    private Thread flusherThread;
+
+    public ReservationJournalService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        ReservationJournal.Recovery recovery = ReservationJournal.open(Path.of(directory), segmentRecords);
+        journal = recovery.journal();
+        unresolved = List.copyOf(recovery.unresolved());
+        if (!unresolved.isEmpty()) {
+            System.out.println("📒 預扣日誌: 上次停機時有 " + unresolved.size() + " 筆預扣尚未確認");
+        }
+        Gauge.builder("ticket.reservation.journal.outstanding", journal, ReservationJournal::outstandingCount)
+                .description("已預扣、尚未收到 broker 確認的訂單數")
+                .register(meterRegistry);
+
+        running = true;
+        flusherThread = new Thread(this::runLoop, "reservation-journal-flusher");
+        flusherThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        if (flusherThread != null) {
+            flusherThread.interrupt();
+            flusherThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * 取出啟動時讀到的未確認預扣（只回傳一次）
+     */
+    public List<ReservationJournal.Entry> takeUnresolved() {
+        List<ReservationJournal.Entry> entries = unresolved;
+        unresolved = List.of();
+        return entries;
+    }
+
+    public void reserved(TicketPurchaseMessage message) {
+        if (journal != null) {
+            journal.reserve(message.getOrderSn(), message.getTicketId(), message.getUserId(), message.getQuantity(),
+                    System.currentTimeMillis());
+        }
+    }
+
+    public void acknowledged(String orderSn) {
+        if (journal != null) {
+            journal.resolve(orderSn, ReservationJournal.ACKNOWLEDGED);
+        }
+    }
+
+    public void released(String orderSn) {
+        if (journal != null) {
+            journal.resolve(orderSn, ReservationJournal.RELEASED);
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                Thread.sleep(fsyncIntervalMillis);
+                journal.flush();
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                System.err.println("💥 預扣日誌落盤異常: " + e.getMessage());
+            }
+        }
+    }
+}
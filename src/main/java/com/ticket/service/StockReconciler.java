@@ -0,0 +1,176 @@
+package com.ticket.service;
+
+import com.ticket.dto.PendingStock;
+import com.ticket.dto.TicketStock;
+import com.ticket.repository.OutboxEventRepository;
+import com.ticket.repository.TicketRepository;
+import com.ticket.service.RedisService.StockSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis / 資料庫庫存對帳
+ * 正常情況下 Redis 庫存 = 資料庫可售庫存 - 在途數量（已預扣、尚未有結果的訂單，ticket:inflight:{id}），
+ * 資料庫已扣、外寄箱尚未套用到 Redis 的數量也要加回。
+ * 兩者不符即為漂移（key 過期、補償失敗、手動改值等）。每輪一次查回全部票券庫存，
+ * Redis 端按批 pipeline 讀取，漂移量輸出為指標。
+ *
+ * 同一張票券連續兩輪漂移量相同才修正（排除成單、結清之間的瞬間差異），
+ * 修正以 Lua compare-and-set 執行：庫存、在途數量、版本 (fence) 與快照不同就放棄，下一輪重新比對。
+ */
+@Service
+public class StockReconciler {
+
+    private final TicketRepository ticketRepository;
+    private final RedisService redisService;
+    private final OutboxEventRepository outboxEventRepository;
+
+    // 上一輪觀察到的漂移量，只由對帳執行緒存取
+    private final Map<Long, Long> lastDrift = new HashMap<>();
+    private volatile long driftTotal;
+    private volatile int driftTickets;
+
+    private final Counter repairCounter;
+
+    @Value("${ticket.reconciler.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ticket.reconciler.interval-ms:30000}")
+    private long intervalMillis;
+
+    @Value("${ticket.reconciler.batch-size:500}")
+    private int batchSize;
+
+    @Value("${ticket.reconciler.repair:true}")
+    private boolean repair;
+
+    private volatile boolean running;
+    private Thread reconcilerThread;
+
+    public StockReconciler(TicketRepository ticketRepository, RedisService redisService,
+                           OutboxEventRepository outboxEventRepository, MeterRegistry meterRegistry) {
+        this.ticketRepository = ticketRepository;
+        this.redisService = redisService;
+        this.outboxEventRepository = outboxEventRepository;
+
+        this.repairCounter = meterRegistry.counter("ticket.stock.repairs");
+        Gauge.builder("ticket.stock.drift.total", this, reconciler -> reconciler.driftTotal)
+                .description("上一輪對帳各票券漂移量絕對值總和")
+                .register(meterRegistry);
+        Gauge.builder("ticket.stock.drift.tickets", this, reconciler -> reconciler.driftTickets)
+                .description("上一輪對帳有漂移的票券數")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        reconcilerThread = new Thread(this::runLoop, "stock-reconciler");
+        reconcilerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (reconcilerThread != null) {
+            reconcilerThread.interrupt();
+            reconcilerThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                Thread.sleep(intervalMillis);
+                reconcile();
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                System.err.println("💥 庫存對帳異常: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 對帳一輪，回傳修正的票券數
+     */
+    int reconcile() {
+        List<TicketStock> stocks = ticketRepository.findAllStocks();
+        Map<Long, Long> pendingOutbox = new HashMap<>();
+        for (PendingStock pending : outboxEventRepository.findPendingStocks()) {
+            pendingOutbox.put(pending.ticketId(), pending.quantity());
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, Long> currentDrift = new HashMap<>();
+        long total = 0;
+        int repaired = 0;
+
+        for (int from = 0; from < stocks.size(); from += batchSize) {
+            List<TicketStock> batch = stocks.subList(from, Math.min(from + batchSize, stocks.size()));
+            List<StockSnapshot> snapshots = redisService.snapshotStocks(batch.stream().map(TicketStock::id).toList());
+
+            for (int i = 0; i < batch.size(); i++) {
+                StockSnapshot snapshot = snapshots.get(i);
+                // 從未初始化過的票券不在 Redis 上販售，不必對帳
+                if (snapshot.stock() == null && snapshot.fence() == null) {
+                    continue;
+                }
+                // 已結束銷售的票券 key 會自然過期，不再補回
+                LocalDateTime saleEndTime = batch.get(i).saleEndTime();
+                if (saleEndTime != null && !saleEndTime.isAfter(now)) {
+                    continue;
+                }
+
+                long inflight = parseLong(snapshot.inflight());
+                long pending = pendingOutbox.getOrDefault(snapshot.ticketId(), 0L);
+                long expected = Math.max(0, batch.get(i).availableStock() + pending - inflight);
+                long drift = parseLong(snapshot.stock()) - expected;
+                if (drift == 0) {
+                    continue;
+                }
+
+                currentDrift.put(snapshot.ticketId(), drift);
+                total += Math.abs(drift);
+                Long previous = lastDrift.get(snapshot.ticketId());
+                if (repair && previous != null && previous == drift) {
+                    if (redisService.reconcileStock(snapshot, expected) != null) {
+                        repairCounter.increment();
+                        currentDrift.remove(snapshot.ticketId());
+                        repaired++;
+                    }
+                }
+            }
+        }
+
+        lastDrift.clear();
+        lastDrift.putAll(currentDrift);
+        driftTotal = total;
+        driftTickets = currentDrift.size() + repaired;
+
+        if (total > 0) {
+            System.out.println("⚖️ 庫存對帳: 漂移票券 " + driftTickets + " 張，漂移總量 " + total + "，已修正 " + repaired + " 張");
+        }
+        return repaired;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        return Long.parseLong(value);
+    }
+}
@@ -0,0 +1,81 @@
+package com.ticket.service;
+
+import com.ticket.dto.ReservationResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地庫存影子
+ * 每個節點記錄各票券的售罄標記與近似庫存，售罄後直接在 JVM 內拒絕，不再打 Redis。
+ * 其他節點的扣減不會通知，這部分只會高估；會增加庫存或清除售罄標記的寫入
+ * （初始化、歸還、對帳修正、預熱）都會廣播新值。pub/sub 不保證送達，漏接或晚到的事件
+ * 可能讓影子暫時低估而誤拒，最多持續 ttl-ms，之後回到以 Redis 為準；影子顯示有貨時一律以 Redis 為準。
+ */
+@Service
+public class StockShadowService implements MessageListener {
+
+    private final Map<Long, TicketState> states = new ConcurrentHashMap<>();
+
+    @Value("${ticket.stock-shadow.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ticket.stock-shadow.ttl-ms:1000}")
+    private long ttlMillis;
+
+    /**
+     * 本地判斷是否可直接拒絕（售罄或近似庫存不足）
+     */
+    public boolean shouldReject(Long ticketId, Integer quantity) {
+        if (!enabled) {
+            return false;
+        }
+        TicketState state = states.get(ticketId);
+        if (state == null || System.currentTimeMillis() - state.refreshedAt() > ttlMillis) {
+            return false;
+        }
+        return state.soldOut() || state.approxStock() < quantity;
+    }
+
+    /**
+     * 依 Redis 預扣結果更新影子
+     */
+    public void record(Long ticketId, ReservationResult reservation) {
+        switch (reservation.getStatus()) {
+            case SUCCESS -> update(ticketId, reservation.getRemainingStock());
+            case SOLD_OUT -> update(ticketId, 0);
+            default -> { }
+        }
+    }
+
+    /**
+     * 接收 Redis 庫存事件 "{ticketId}:{stock}"
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        if (separator < 0) {
+            return;
+        }
+        try {
+            Long ticketId = Long.valueOf(body.substring(0, separator));
+            long stock = Long.parseLong(body.substring(separator + 1));
+            update(ticketId, stock);
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ 無法解析庫存事件: " + body);
+        }
+    }
+
+    private void update(Long ticketId, long stock) {
+        states.put(ticketId, new TicketState(stock <= 0, stock, System.currentTimeMillis()));
+    }
+
+    private record TicketState(boolean soldOut, long approxStock, long refreshedAt) {
+    }
+}
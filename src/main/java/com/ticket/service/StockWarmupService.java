@@ -0,0 +1,166 @@
+package com.ticket.service;
+
+import com.ticket.dto.TicketStock;
+import com.ticket.repository.TicketRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis 庫存預熱
+ * 啟動時把銷售中與即將開賣（lookahead 內）的票券分批載入 Redis，完成前本節點不接受搶票：
+ * 預熱在 ApplicationRunner 內同步執行，Spring Boot 會等它結束才把 readiness 設為 ACCEPTING_TRAFFIC，
+ * 另以 HealthIndicator 加入 readiness 群組（預熱失敗時保持 OUT_OF_SERVICE），搶票入口也會檢查 isReady()。
+ *
+ * 之後定期把新進入 lookahead 的票券提前載入，開賣時庫存已在 Redis。
+ * 只寫入不存在的 key（滾動重啟不覆蓋正在販售的計數），每批一次查詢 + 一次 pipeline。
+ */
+@Service("stockWarmup")
+public class StockWarmupService implements ApplicationRunner, HealthIndicator {
+
+    private final TicketRepository ticketRepository;
+    private final InventoryEngine inventoryEngine;
+
+    private final Counter loadedCounter;
+
+    @Value("${ticket.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ticket.warmup.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${ticket.warmup.lookahead-minutes:30}")
+    private long lookaheadMinutes;
+
+    @Value("${ticket.warmup.interval-ms:60000}")
+    private long intervalMillis;
+
+    private volatile boolean ready;
+    private volatile boolean running;
+    private Thread warmupThread;
+
+    // 上次預熱涵蓋到的開賣時間，只由預熱執行緒存取
+    private LocalDateTime warmedUntil;
+
+    public StockWarmupService(TicketRepository ticketRepository, InventoryEngine inventoryEngine, MeterRegistry meterRegistry) {
+        this.ticketRepository = ticketRepository;
+        this.inventoryEngine = inventoryEngine;
+        this.loadedCounter = meterRegistry.counter("ticket.warmup.loaded");
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            ready = true;
+            return;
+        }
+        try {
+            warmAll();
+        } catch (Exception e) {
+            // 保持未就緒，由背景執行緒重試
+            System.err.println("💥 庫存預熱失敗，稍後重試: " + e.getMessage());
+        }
+
+        running = true;
+        warmupThread = new Thread(this::runLoop, "stock-warmup");
+        warmupThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (warmupThread != null) {
+            warmupThread.interrupt();
+            warmupThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * 庫存是否已載入，未就緒時搶票入口直接回 503
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public Health health() {
+        return ready ? Health.up().build() : Health.outOfService().withDetail("reason", "庫存預熱中").build();
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                Thread.sleep(intervalMillis);
+                if (ready) {
+                    warmUpcoming();
+                } else {
+                    warmAll();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                System.err.println("💥 庫存預熱異常: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 載入銷售中與 lookahead 內開賣的全部票券
+     */
+    private void warmAll() {
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime horizon = now.plusMinutes(lookaheadMinutes);
+        int[] counts = warm(null, horizon, now);
+        warmedUntil = horizon;
+        ready = true;
+        System.out.println("🔥 庫存預熱完成: 票券 " + counts[0] + " 張，新載入 " + counts[1] + " 張，耗時 "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * 只載入上次預熱之後才進入 lookahead 的票券
+     */
+    private void warmUpcoming() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime horizon = now.plusMinutes(lookaheadMinutes);
+        int[] counts = warm(warmedUntil, horizon, now);
+        warmedUntil = horizon;
+        if (counts[1] > 0) {
+            System.out.println("🔥 即將開賣票券預熱: 新載入 " + counts[1] + " 張");
+        }
+    }
+
+    /**
+     * 以 id 為 keyset 分批查詢並寫入，回傳 [查到的票券數, 實際寫入數]
+     */
+    private int[] warm(LocalDateTime startsFrom, LocalDateTime startsBefore, LocalDateTime now) {
+        int scanned = 0;
+        int loaded = 0;
+        Long cursor = null;
+        while (true) {
+            List<TicketStock> chunk = ticketRepository.findWarmupChunk(cursor, startsFrom, startsBefore, now, chunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            scanned += chunk.size();
+            loaded += inventoryEngine.warm(chunk);
+            cursor = chunk.get(chunk.size() - 1).id();
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+        }
+        loadedCounter.increment(loaded);
+        return new int[]{scanned, loaded};
+    }
+}
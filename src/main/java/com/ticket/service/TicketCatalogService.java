@@ -0,0 +1,227 @@
+package com.ticket.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ticket.entity.Ticket;
+import com.ticket.repository.TicketRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 票券目錄快取（本地 Caffeine + Redis 兩層）
+ * 快取內容是序列化好的 JSON，以全域版本號失效：新增票券或資料庫庫存變動時遞增版本，
+ * 舊版本的 key 自然過期。availableStock 不取快取，一律以 Redis 庫存計數覆蓋。
+ */
+@Service
+public class TicketCatalogService {
+
+    private static final String VERSION_KEY = "ticket:catalog:version";
+    private static final String ALL = "all";
+    private static final byte[] STOCK_FIELD = ",\"availableStock\":".getBytes(StandardCharsets.UTF_8);
+
+    private final TicketRepository ticketRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, Snapshot> localCache;
+
+    @Value("${ticket.catalog.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ticket.catalog.cache.redis-ttl-seconds:600}")
+    private long redisTtlSeconds;
+
+    public TicketCatalogService(TicketRepository ticketRepository, StringRedisTemplate stringRedisTemplate,
+                                ObjectMapper objectMapper,
+                                @Value("${ticket.catalog.cache.local-max-size:1000}") long localMaxSize) {
+        this.ticketRepository = ticketRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.localCache = Caffeine.newBuilder().maximumSize(localMaxSize).build();
+    }
+
+    /**
+     * 票券列表 JSON
+     */
+    public CatalogBody getAllTickets() {
+        return render(ALL, true);
+    }
+
+    /**
+     * 單張票券 JSON，不存在時拋出例外
+     */
+    public CatalogBody getTicket(Long id) {
+        return render(String.valueOf(id), false);
+    }
+
+    /**
+     * 遞增目錄版本；在交易中呼叫時延到提交後才遞增，避免讀者把舊資料寫回新版本
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bumpVersion();
+                }
+            });
+        } else {
+            bumpVersion();
+        }
+    }
+
+    private void bumpVersion() {
+        try {
+            Long version = stringRedisTemplate.opsForValue().increment(VERSION_KEY);
+            System.out.println("🗂️ 票券目錄版本更新: " + version);
+        } catch (Exception e) {
+            System.err.println("⚠️ 票券目錄版本更新失敗: " + e.getMessage());
+        }
+    }
+
+    private CatalogBody render(String name, boolean list) {
+        if (!enabled) {
+            Snapshot snapshot = toSnapshot(0, loadFromDatabase(name, list), list);
+            return write(snapshot, fetchVersionAndStocks(snapshot), list);
+        }
+
+        // 版本號與庫存計數一次 MGET 取回，版本沒變就完全不碰資料庫
+        Snapshot snapshot = localCache.getIfPresent(name);
+        List<String> values = fetchVersionAndStocks(snapshot);
+        long version = parseLong(values.get(0), 0);
+
+        if (snapshot == null || snapshot.version() != version) {
+            snapshot = loadSnapshot(name, list, version);
+            localCache.put(name, snapshot);
+            values = fetchVersionAndStocks(snapshot);
+        }
+        return write(snapshot, values, list);
+    }
+
+    /**
+     * 本地快取未命中：先讀 Redis 的序列化結果，再不行才查資料庫並回寫 Redis
+     */
+    private Snapshot loadSnapshot(String name, boolean list, long version) {
+        String key = "ticket:catalog:" + version + ":" + name;
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (json == null) {
+            json = loadFromDatabase(name, list);
+            stringRedisTemplate.opsForValue().set(key, json, redisTtlSeconds, TimeUnit.SECONDS);
+        }
+        return toSnapshot(version, json, list);
+    }
+
+    private String loadFromDatabase(String name, boolean list) {
+        try {
+            if (list) {
+                return objectMapper.writeValueAsString(ticketRepository.findAll());
+            }
+            Ticket ticket = ticketRepository.findForCatalog(Long.valueOf(name))
+                    .orElseThrow(() -> new RuntimeException("票券不存在"));
+            return objectMapper.writeValueAsString(ticket);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("票券序列化失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 拆出每張票券除 availableStock 以外的 JSON 片段，回應時直接拼接
+     */
+    private Snapshot toSnapshot(long version, String json, boolean list) {
+        try {
+            JsonNode root = objectMapper.readTree(json);
+            List<Entry> entries = new ArrayList<>();
+            for (JsonNode node : list ? root : List.of(root)) {
+                ObjectNode object = ((ObjectNode) node).deepCopy();
+                JsonNode stock = object.remove("availableStock");
+                byte[] serialized = objectMapper.writeValueAsBytes(object);
+                // 去掉結尾的 '}'，補上庫存欄位後再閉合
+                byte[] head = Arrays.copyOf(serialized, serialized.length - 1);
+                entries.add(new Entry(object.path("id").asLong(), head, stock == null ? 0 : stock.asLong()));
+            }
+            return new Snapshot(version, entries);
+        } catch (IOException e) {
+            throw new RuntimeException("票券快取解析失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 回傳 [版本號, 各票券庫存...]，快照為 null 時只取版本號
+     */
+    private List<String> fetchVersionAndStocks(Snapshot snapshot) {
+        List<String> keys = new ArrayList<>();
+        keys.add(VERSION_KEY);
+        if (snapshot != null) {
+            snapshot.entries().forEach(entry -> keys.add("ticket:stock:" + entry.ticketId()));
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        List<String> result = values == null ? new ArrayList<>() : new ArrayList<>(values);
+        while (result.size() < keys.size()) {
+            result.add(null);
+        }
+        return result;
+    }
+
+    private CatalogBody write(Snapshot snapshot, List<String> versionAndStocks, boolean list) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(snapshot.entries().size() * 256 + 2);
+        if (list) {
+            out.write('[');
+        }
+        for (int i = 0; i < snapshot.entries().size(); i++) {
+            Entry entry = snapshot.entries().get(i);
+            if (i > 0) {
+                out.write(',');
+            }
+            // Redis 有計數就以計數為準，否則用快取當下的資料庫值
+            long stock = Math.max(0, parseLong(versionAndStocks.get(i + 1), entry.databaseStock()));
+            out.writeBytes(entry.head());
+            out.writeBytes(STOCK_FIELD);
+            out.writeBytes(Long.toString(stock).getBytes(StandardCharsets.US_ASCII));
+            out.write('}');
+        }
+        if (list) {
+            out.write(']');
+        }
+
+        byte[] body = out.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        String etag = "\"" + snapshot.version() + "-" + Long.toHexString(crc.getValue()) + "\"";
+        return new CatalogBody(body, etag);
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public record CatalogBody(byte[] json, String etag) {
+    }
+
+    private record Entry(long ticketId, byte[] head, long databaseStock) {
+    }
+
+    private record Snapshot(long version, List<Entry> entries) {
+    }
+}
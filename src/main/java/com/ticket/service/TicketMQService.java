@@ -1,58 +1,102 @@
 // src/main/java/com/ticket/service/TicketMQService.java
 package com.ticket.service;
 
+import com.ticket.dto.ReservationResult;
 import com.ticket.dto.TicketPurchaseMessage;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import com.ticket.service.OrderStatusService.OrderStatusUpdate;
+import com.ticket.util.OrderSnGenerator;
 import org.springframework.stereotype.Service;
-import java.util.UUID;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
 public class TicketMQService {
     
+    private final InventoryEngine inventoryEngine;
     private final RedisService redisService;
-    private final RabbitTemplate rabbitTemplate;
+    private final PurchaseMessagePublisher purchaseMessagePublisher;
+    private final StockShadowService stockShadowService;
+    private final OrderSnGenerator orderSnGenerator;
+    private final OrderStatusService orderStatusService;
+    private final ReservationExpiryService reservationExpiryService;
+    private final ReservationJournalService reservationJournalService;
     
-    public TicketMQService(RedisService redisService, RabbitTemplate rabbitTemplate) {
+    public TicketMQService(InventoryEngine inventoryEngine, RedisService redisService,
+                           PurchaseMessagePublisher purchaseMessagePublisher,
+                           StockShadowService stockShadowService, OrderSnGenerator orderSnGenerator,
+                           OrderStatusService orderStatusService, ReservationExpiryService reservationExpiryService,
+                           ReservationJournalService reservationJournalService) {
+        this.inventoryEngine = inventoryEngine;
         this.redisService = redisService;
-        this.rabbitTemplate = rabbitTemplate;
+        this.purchaseMessagePublisher = purchaseMessagePublisher;
+        this.stockShadowService = stockShadowService;
+        this.orderSnGenerator = orderSnGenerator;
+        this.orderStatusService = orderStatusService;
+        this.reservationExpiryService = reservationExpiryService;
+        this.reservationJournalService = reservationJournalService;
     }
     
     /**
      * 純異步搶票
      */
     public Map<String, Object> purchaseTicketAsync(Long ticketId, Long userId, Integer quantity) {
-        // 1. 先檢查 Redis 庫存（不直接減）
-        Integer currentStock = redisService.getStock(ticketId);
-        if (currentStock == null || currentStock < quantity) {
-            throw new RuntimeException("庫存不足");
-        }
+        // 1. 生成唯一訂單號（不存DB），預扣時一併寫入 PENDING 訂單狀態
+        String orderSn = orderSnGenerator.nextSn();
         
-        // 2. Redis 原子減庫存
-        Long remainingStock = redisService.decrementStock(ticketId, quantity);
+        // 2. 原子預扣庫存（售罄檢查 + 每人上限 + 扣減；Redis 引擎同一次往返寫入訂單狀態）
+        ReservationResult reservation = inventoryEngine.reserve(orderSn, ticketId, userId, quantity);
+        stockShadowService.record(ticketId, reservation);
         
-        if (remainingStock < 0) {
-            // 立即恢復庫存
-            redisService.incrementStock(ticketId, quantity);
-            throw new RuntimeException("庫存不足");
+        if (!reservation.isSuccess()) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", reservation.getMessage());
+            result.put("reason", reservation.getStatus().name());
+            return result;
         }
         
-        // 3. 生成唯一訂單號（不存DB）
-        String orderSn = generateOrderSn();
+        // 本地引擎不經 Redis 扣庫存，補寫訂單狀態 / 預扣期限 / 在途數量；寫不進去就歸還，不留無人回收的預扣
+        if (!inventoryEngine.recordsReservation()) {
+            try {
+                redisService.recordReservation(orderSn, ticketId, userId, quantity);
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ 預扣記錄寫入失敗，歸還庫存: " + orderSn + ", " + e.getMessage());
+                inventoryEngine.release(orderSn, ticketId, userId, quantity);
+                Map<String, Object> result = new HashMap<>();
+                result.put("success", false);
+                result.put("message", "系統繁忙，請稍後再試");
+                result.put("reason", "BUSY");
+                return result;
+            }
+        }
         
-        // 4. 發送消息到隊列
         TicketPurchaseMessage message = new TicketPurchaseMessage();
         message.setOrderSn(orderSn);
         message.setTicketId(ticketId);
         message.setUserId(userId);
         message.setQuantity(quantity);
         
-        rabbitTemplate.convertAndSend("ticket.purchase.exchange", "ticket.purchase", message);
+        // 寫入預扣紀錄日誌，節點在 broker 確認前崩潰時重啟可重發或歸還
+        reservationJournalService.reserved(message);
         
-        System.out.println("✅ 搶票請求已發送MQ: " + orderSn);
+        // 逾時未成單時自動歸還庫存
+        reservationExpiryService.track(orderSn);
+        
+        // 3. 放入發送緩衝區，由發送執行緒批量發送並等待 broker 確認
+        if (!purchaseMessagePublisher.enqueue(message)) {
+            // 緩衝區已滿，立即歸還庫存並結束訂單狀態
+            inventoryEngine.release(orderSn, ticketId, userId, quantity);
+            reservationJournalService.released(orderSn);
+            orderStatusService.publish(List.of(OrderStatusUpdate.failed(message, "系統繁忙，請稍後再試")));
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "系統繁忙，請稍後再試");
+            result.put("reason", "BUSY");
+            return result;
+        }
         
-        // 5. 立即返回！
+        // 4. 立即返回！
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
         result.put("message", "搶票成功");
@@ -61,11 +105,4 @@ public class TicketMQService {
         
         return result;
     }
-    
-    /**
-     * 生成唯一訂單號
-     */
-    private String generateOrderSn() {
-        return "T" + UUID.randomUUID().toString().replace("-", "");
-    }
 }
\ No newline at end of file
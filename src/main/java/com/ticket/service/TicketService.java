@@ -1,14 +1,26 @@
 package com.ticket.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ticket.dto.TicketListQuery;
+import com.ticket.dto.TicketSummary;
 import com.ticket.entity.Ticket;
 import com.ticket.entity.Order;
+import com.ticket.entity.OutboxEvent;
 import com.ticket.repository.TicketRepository;
 import com.ticket.repository.OrderRepository;
+import com.ticket.repository.OrderPurchaseRepository;
+import com.ticket.repository.OutboxEventRepository;
+import com.ticket.util.OrderSnGenerator;
 
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 
 import java.math.BigDecimal;
@@ -18,12 +30,26 @@ public class TicketService {
     
     private final TicketRepository ticketRepository;
     private final OrderRepository orderRepository;
-    private final RedisService redisService;
+    private final OutboxEventRepository outboxEventRepository;
+    private final OrderPurchaseRepository orderPurchaseRepository;
+    private final InventoryEngine inventoryEngine;
+    private final OrderSnGenerator orderSnGenerator;
+    private final TicketCatalogService ticketCatalogService;
+    private final ObjectMapper objectMapper;
     
-    public TicketService(TicketRepository ticketRepository, OrderRepository orderRepository, RedisService redisService) {
+    public TicketService(TicketRepository ticketRepository, OrderRepository orderRepository,
+                         OutboxEventRepository outboxEventRepository,
+                         OrderPurchaseRepository orderPurchaseRepository, InventoryEngine inventoryEngine,
+                         OrderSnGenerator orderSnGenerator, TicketCatalogService ticketCatalogService,
+                         ObjectMapper objectMapper) {
         this.ticketRepository = ticketRepository;
         this.orderRepository = orderRepository;
-        this.redisService = redisService;
+        this.outboxEventRepository = outboxEventRepository;
+        this.orderPurchaseRepository = orderPurchaseRepository;
+        this.inventoryEngine = inventoryEngine;
+        this.orderSnGenerator = orderSnGenerator;
+        this.ticketCatalogService = ticketCatalogService;
+        this.objectMapper = objectMapper;
     }
     
     /**
@@ -33,6 +59,42 @@ public class TicketService {
         return ticketRepository.findAll();
     }
     
+    /**
+     * 分頁列出票券（keyset 分頁 + 列表投影），邊查邊寫出 JSON，不在記憶體組整頁
+     * 輸出 {"items":[...],"nextCursor":id|null}，多查一筆判斷是否還有下一頁
+     */
+    @Transactional(readOnly = true)
+    public void writeTicketPage(TicketListQuery query, OutputStream out) throws IOException {
+        try (Stream<TicketSummary> rows = ticketRepository.streamSummaries(query, query.size() + 1);
+             JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("items");
+
+            Long lastId = null;
+            boolean hasMore = false;
+            int written = 0;
+            Iterator<TicketSummary> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                TicketSummary summary = iterator.next();
+                if (written == query.size()) {
+                    hasMore = true;
+                    break;
+                }
+                generator.writeObject(summary);
+                lastId = summary.id();
+                written++;
+            }
+
+            generator.writeEndArray();
+            if (hasMore) {
+                generator.writeNumberField("nextCursor", lastId);
+            } else {
+                generator.writeNullField("nextCursor");
+            }
+            generator.writeEndObject();
+        }
+    }
+    
     /**
      * 根據ID獲取票券
      */
@@ -45,69 +107,65 @@ public class TicketService {
      * 創建新票券
      */
     public Ticket createTicket(Ticket ticket) {
-        return ticketRepository.save(ticket);
+        Ticket saved = ticketRepository.save(ticket);
+        ticketCatalogService.invalidate();
+        return saved;
     }
 
 
     /**
-     * Redis 搶票 
-     * 先在 Redis 中原子減庫存，成功後再寫數據庫
+     * Redis 搶票
+     * 庫存引擎只做唯讀的快速拒絕，扣庫存、訂單、外寄箱事件在同一個資料庫交易內寫入；
+     * 提交後由 OutboxRelay 把扣減套用到 Redis，不再有「Redis 已扣、資料庫回滾」的雙寫不一致
      */
     @Transactional
     public Order purchaseTicketWithRedis(Long ticketId, Long userId, Integer quantity) {
-        // 1. 先在 Redis 中原子減庫存
-        Long remainingStock = redisService.decrementStock(ticketId, quantity);
+        // 1. 快速拒絕（不扣減）：未初始化或明顯不足時不進資料庫；經庫存引擎讀取，本地引擎的計數不在 Redis
+        Integer engineStock = inventoryEngine.getStock(ticketId);
         
-        if (remainingStock == null) {
+        if (engineStock == null) {
             throw new RuntimeException("票券不存在或未初始化庫存");
         }
         
-        if (remainingStock < 0) {
-            // 庫存不足，恢復 Redis 庫存
-            redisService.decrementStock(ticketId, -quantity);
+        if (engineStock < quantity) {
             throw new RuntimeException("庫存不足");
         }
         
-        try {
-            // 2. Redis 減庫存成功，再操作數據庫
-            Ticket ticket = ticketRepository.findById(ticketId)
-                    .orElseThrow(() -> new RuntimeException("票券不存在"));
-            
-            // 再次檢查庫存（雙重保障）
-            if (ticket.getAvailableStock() < quantity) {
-                // 恢復 Redis 庫存
-                redisService.decrementStock(ticketId, -quantity);
-                throw new RuntimeException("庫存不足");
-            }
-            
-            // 扣減數據庫庫存
-            ticket.setAvailableStock(ticket.getAvailableStock() - quantity);
-            ticketRepository.save(ticket);
-            
-            // 創建訂單
-            Order order = new Order();
-            order.setUserId(userId);
-            order.setTicketId(ticketId);
-            order.setQuantity(quantity);
-            order.setTotalAmount(ticket.getPrice().multiply(BigDecimal.valueOf(quantity)));
-            
-            return orderRepository.save(order);
-            
-        } catch (Exception e) {
-            // 發生異常，恢復 Redis 庫存
-            redisService.decrementStock(ticketId, -quantity);
-            throw new RuntimeException("搶票失敗: " + e.getMessage());
+        // 2. 資料庫扣庫存（以資料庫為準）
+        Ticket ticket = ticketRepository.findById(ticketId)
+                .orElseThrow(() -> new RuntimeException("票券不存在"));
+        
+        if (ticket.getAvailableStock() < quantity) {
+            throw new RuntimeException("庫存不足");
         }
+        
+        ticket.setAvailableStock(ticket.getAvailableStock() - quantity);
+        ticketRepository.save(ticket);
+        
+        // 3. 創建訂單
+        Order order = new Order();
+        order.setOrderSn(orderSnGenerator.nextSn());
+        order.setUserId(userId);
+        order.setTicketId(ticketId);
+        order.setQuantity(quantity);
+        order.setTotalAmount(ticket.getPrice().multiply(BigDecimal.valueOf(quantity)));
+        Order saved = orderRepository.save(order);
+        
+        // 4. 同一交易寫入外寄箱，提交後才會被 relay 套用到 Redis，回滾則一起消失
+        outboxEventRepository.save(OutboxEvent.stockDecremented(ticketId, order.getOrderSn(), quantity));
+        
+        return saved;
     }
     
     
     /**
-     * 初始化 Redis 庫存（管理員用）
+     * 初始化搶票庫存（管理員用），寫入目前的庫存引擎
      */
     public void initRedisStock(Long ticketId) {
         Ticket ticket = ticketRepository.findById(ticketId)
                 .orElseThrow(() -> new RuntimeException("票券不存在"));
-        redisService.setStock(ticketId, ticket.getAvailableStock());
+        inventoryEngine.setStock(ticketId, ticket.getAvailableStock(), ticket.getSaleEndTime());
+        ticketCatalogService.invalidate();
     }
 
 
@@ -136,11 +194,13 @@ public class TicketService {
                 // 扣減庫存
                 ticket.setAvailableStock(ticket.getAvailableStock() - quantity);
                 Ticket savedTicket = ticketRepository.save(ticket); // 這裡會檢查版本號
+                ticketCatalogService.invalidate(); // 提交後才遞增目錄版本
                 
                 System.out.println("🗃️ DB方案 - 更新成功: 新庫存=" + savedTicket.getAvailableStock() + ", 新版本=" + savedTicket.getVersion());
                 
                 // 創建訂單
                 Order order = new Order();
+                order.setOrderSn(orderSnGenerator.nextSn());
                 order.setUserId(userId);
                 order.setTicketId(ticketId);
                 order.setQuantity(quantity);
@@ -165,4 +225,47 @@ public class TicketService {
         
         throw new RuntimeException("搶票失敗");
     }
-}
\ No newline at end of file
+
+    /**
+     * 純DB悲觀鎖搶票（對比測試用）
+     * SELECT ... FOR UPDATE 鎖住票券列，同一張票的請求在鎖上排隊，不會有版本衝突
+     */
+    @Transactional
+    public Order purchaseTicketDBPessimistic(Long ticketId, Long userId, Integer quantity) {
+        Ticket ticket = ticketRepository.findByIdWithPessimisticLock(ticketId)
+                .orElseThrow(() -> new RuntimeException("票券不存在"));
+        if (ticket.getAvailableStock() < quantity) {
+            throw new RuntimeException("庫存不足");
+        }
+        ticket.setAvailableStock(ticket.getAvailableStock() - quantity);
+        ticketRepository.save(ticket);
+        ticketCatalogService.invalidate(); // 提交後才遞增目錄版本
+
+        Order order = new Order();
+        order.setOrderSn(orderSnGenerator.nextSn());
+        order.setUserId(userId);
+        order.setTicketId(ticketId);
+        order.setQuantity(quantity);
+        order.setTotalAmount(ticket.getPrice().multiply(BigDecimal.valueOf(quantity)));
+        order.setStatus(Order.OrderStatus.PAID);
+        return orderRepository.save(order);
+    }
+
+    /**
+     * 純DB單一語句搶票
+     * 條件式扣庫存 + 建立訂單在同一個 SQL 語句內完成（見 OrderPurchaseRepository），
+     * 不載入實體、不重試、不 sleep；熱門票券上的併發請求只在列鎖上排隊。
+     */
+    public Long purchaseTicketAtomic(Long ticketId, Long userId, Integer quantity) {
+        if (quantity == null || quantity <= 0) {
+            throw new RuntimeException("購買數量必須大於 0");
+        }
+        Long orderId = orderPurchaseRepository.purchase(orderSnGenerator.nextSn(), ticketId, userId, quantity);
+        if (orderId == null) {
+            // 沒有扣到庫存，只有失敗路徑才多查一次區分原因
+            throw new RuntimeException(ticketRepository.existsById(ticketId) ? "庫存不足" : "票券不存在");
+        }
+        ticketCatalogService.invalidate();
+        return orderId;
+    }
+}
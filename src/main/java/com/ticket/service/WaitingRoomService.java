@@ -0,0 +1,241 @@
+package com.ticket.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 虛擬等候室
+ * 用戶先進入每張票券的排隊 zset，放行執行緒依設定速率分批放行（庫存經庫存引擎讀取，售罄即停止放行），
+ * 被放行的用戶查詢排隊狀態時取得 HMAC 簽章的入場憑證，憑證綁定票券與用戶、短時間有效，
+ * 驗證只需本地計算，不碰 Redis。enforce 開啟後搶票入口只接受持有有效憑證的請求。
+ */
+@Service
+public class WaitingRoomService {
+
+    // 有人排隊中的票券，放行執行緒只掃這些
+    private static final String ACTIVE_KEY = "waitroom:active";
+
+    private static final RedisScript<Long> JOIN_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/waiting_room_join.lua"), Long.class);
+    private static final RedisScript<Long> ADMIT_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/waiting_room_admit.lua"), Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final InventoryEngine inventoryEngine;
+    private final SecretKeySpec signingKey;
+    private final ThreadLocal<Mac> macs;
+
+    private final Counter admittedCounter;
+
+    @Value("${ticket.waiting-room.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ticket.waiting-room.enforce:false}")
+    private boolean enforce;
+
+    @Value("${ticket.waiting-room.admit-per-second:200}")
+    private double admitPerSecond;
+
+    @Value("${ticket.waiting-room.interval-ms:200}")
+    private long intervalMillis;
+
+    @Value("${ticket.waiting-room.token-ttl-seconds:60}")
+    private long tokenTtlSeconds;
+
+    private volatile boolean running;
+    private Thread admitThread;
+
+    public WaitingRoomService(StringRedisTemplate stringRedisTemplate, InventoryEngine inventoryEngine,
+                              MeterRegistry meterRegistry,
+                              @Value("${ticket.waiting-room.secret:${jwt.secret}}") String secret) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.inventoryEngine = inventoryEngine;
+        this.signingKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        // Mac 非執行緒安全，每個執行緒各持一份
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(signingKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("無法初始化入場憑證簽章", e);
+            }
+        });
+        this.admittedCounter = meterRegistry.counter("ticket.waiting-room.admitted");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        admitThread = new Thread(this::runLoop, "waiting-room-admit");
+        admitThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (admitThread != null) {
+            admitThread.interrupt();
+            admitThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    public boolean isEnforced() {
+        return enabled && enforce;
+    }
+
+    /**
+     * 進入等候室（重複進入保留原本的位置）
+     */
+    public Map<String, Object> join(Long ticketId, String client) {
+        long now = nowSeconds();
+        Long ahead = stringRedisTemplate.execute(JOIN_SCRIPT,
+                List.of(queueKey(ticketId), "waitroom:seq:" + ticketId, ACTIVE_KEY, admittedKey(ticketId)),
+                client, String.valueOf(ticketId), String.valueOf(now));
+        if (ahead != null && ahead < 0) {
+            return status(ticketId, client);
+        }
+        return waiting(ahead == null ? 0 : ahead);
+    }
+
+    /**
+     * 查詢排隊狀態（一次 pipeline）：已放行回傳入場憑證，售罄與否以庫存引擎為準，否則回傳前方人數
+     */
+    public Map<String, Object> status(Long ticketId, String client) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.zScore(admittedKey(ticketId), client);
+            stringConnection.zRank(queueKey(ticketId), client);
+            return null;
+        });
+        Double expiresAt = (Double) results.get(0);
+        Long rank = (Long) results.get(1);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        if (expiresAt != null && expiresAt.longValue() > nowSeconds()) {
+            body.put("status", "admitted");
+            body.put("admissionToken", sign(ticketId, client, expiresAt.longValue()));
+            body.put("expiresAt", expiresAt.longValue());
+        } else if (inventoryEngine.isSoldOut(ticketId)) {
+            body.put("status", "sold_out");
+            body.put("message", "票券已售完");
+        } else if (rank != null) {
+            body.putAll(waiting(rank));
+        } else {
+            body.put("status", "not_in_queue");
+            body.put("message", "尚未進入等候室或入場憑證已過期");
+        }
+        return body;
+    }
+
+    /**
+     * 驗證入場憑證（本地計算，不碰 Redis）
+     */
+    public boolean verify(Long ticketId, String client, String token) {
+        if (token == null) {
+            return false;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return false;
+        }
+        long expiresAt;
+        try {
+            expiresAt = Long.parseLong(token.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (expiresAt <= nowSeconds()) {
+            return false;
+        }
+        byte[] expected = sign(ticketId, client, expiresAt).getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, token.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void runLoop() {
+        long perTick = Math.max(1, Math.round(admitPerSecond * intervalMillis / 1000));
+        while (running) {
+            try {
+                Set<String> active = stringRedisTemplate.opsForSet().members(ACTIVE_KEY);
+                if (active != null) {
+                    for (String ticketId : active) {
+                        admit(Long.valueOf(ticketId), perTick);
+                    }
+                }
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                System.err.println("💥 等候室放行異常: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 放行一批，回傳放行人數；售罄回傳 -1，本輪已由其他節點放行回傳 -2
+     */
+    long admit(Long ticketId, long count) {
+        long now = nowSeconds();
+        // 庫存歸零（或尚未載入）就不再放人進來搶；本地庫存引擎的計數不在 Redis，一律經引擎讀取
+        Integer stock = inventoryEngine.getStock(ticketId);
+        boolean available = stock != null && stock > 0;
+        Long admitted = stringRedisTemplate.execute(ADMIT_SCRIPT,
+                List.of(queueKey(ticketId), admittedKey(ticketId), "waitroom:tick:" + ticketId, ACTIVE_KEY),
+                String.valueOf(count), String.valueOf(intervalMillis), String.valueOf(ticketId),
+                String.valueOf(now), String.valueOf(now + tokenTtlSeconds), available ? "1" : "0");
+        if (admitted != null && admitted > 0) {
+            admittedCounter.increment(admitted);
+        }
+        return admitted == null ? 0 : admitted;
+    }
+
+    // 憑證格式 "{到期時間}.{HMAC(票券:用戶:到期時間)}"
+    private String sign(Long ticketId, String client, long expiresAt) {
+        byte[] signature = macs.get().doFinal((ticketId + ":" + client + ":" + expiresAt).getBytes(StandardCharsets.UTF_8));
+        return expiresAt + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+    private static Map<String, Object> waiting(long ahead) {
+        return Map.of(
+            "status", "waiting",
+            "position", ahead + 1,
+            "message", "排隊中，請稍後查詢"
+        );
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static String queueKey(Long ticketId) {
+        return "waitroom:queue:" + ticketId;
+    }
+
+    private static String admittedKey(Long ticketId) {
+        return "waitroom:admitted:" + ticketId;
+    }
+}
@@ -0,0 +1,122 @@
+package com.ticket.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 分層時間輪（Kafka Purgatory 的做法）
+ * 第 0 層每格 tickMs、共 wheelSize 格；超出範圍的項目放進上一層（每格 = 下層一整圈），
+ * 時間推進到上層某格時再降級回第 0 層。新增與到期都是 O(1)，和未到期的項目數量無關。
+ *
+ * 到期時間以 tick 向上取整，只會晚觸發、不會早觸發。
+ * 非執行緒安全：add / advance 必須在同一個執行緒呼叫。
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final Level<T> root;
+    private int size;
+
+    public HierarchicalTimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize <= 1) {
+            throw new IllegalArgumentException("tickMs 必須 > 0 且 wheelSize 必須 > 1");
+        }
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.root = new Level<>(tickMs, wheelSize, startMs - startMs % tickMs);
+    }
+
+    /**
+     * 加入項目，已經到期時回傳 false（由呼叫方直接處理）
+     */
+    public boolean add(T item, long deadlineMs) {
+        // 向上取整到 tick，確保不早於 deadline 觸發
+        Entry<T> entry = new Entry<>(item, deadlineMs + tickMs - 1);
+        if (!insert(root, entry)) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * 推進時鐘到 nowMs，逐一回呼所有已到期的項目
+     */
+    public void advance(long nowMs, Consumer<T> onExpired) {
+        while (root.currentTime + tickMs <= nowMs) {
+            tickTo(root, root.currentTime + tickMs, onExpired);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private boolean insert(Level<T> level, Entry<T> entry) {
+        if (entry.deadline < level.currentTime + level.tick) {
+            return false;
+        }
+        if (entry.deadline < level.currentTime + level.interval) {
+            level.buckets[level.index(entry.deadline)].add(entry);
+            return true;
+        }
+        if (level.overflow == null) {
+            level.overflow = new Level<>(level.interval, wheelSize, level.currentTime - level.currentTime % level.interval);
+        }
+        return insert(level.overflow, entry);
+    }
+
+    private void tickTo(Level<T> level, long time, Consumer<T> onExpired) {
+        long aligned = time - time % level.tick;
+        if (aligned == level.currentTime) {
+            return;
+        }
+        level.currentTime = aligned;
+
+        // 上層先推進，降級下來的項目才會落到本層正確的格子
+        if (level.overflow != null) {
+            tickTo(level.overflow, time, onExpired);
+        }
+
+        List<Entry<T>> bucket = level.buckets[level.index(aligned)];
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Entry<T>> entries = new ArrayList<>(bucket);
+        bucket.clear();
+        for (Entry<T> entry : entries) {
+            if (!insert(root, entry)) {
+                size--;
+                onExpired.accept(entry.item);
+            }
+        }
+    }
+
+    private static final class Level<T> {
+        final long tick;
+        final long interval;
+        final List<Entry<T>>[] buckets;
+        long currentTime;
+        Level<T> overflow;
+
+        @SuppressWarnings("unchecked")
+        Level(long tick, int wheelSize, long startTime) {
+            this.tick = tick;
+            this.interval = tick * wheelSize;
+            this.currentTime = startTime;
+            this.buckets = new List[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new ArrayList<>();
+            }
+        }
+
+        int index(long time) {
+            return (int) ((time / tick) % buckets.length);
+        }
+    }
+
+    private record Entry<T>(T item, long deadline) {
+    }
+}
@@ -0,0 +1,218 @@
+package com.ticket.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 本地庫存異動日誌（redo log：呼叫方在記憶體異動生效後、回傳前追加）
+ * 每筆固定 64 bytes：類型(1) + 訂單號長度(1) + 保留(2) + 數量(4) + 票券 ID(8) + 用戶 ID(8) + 值(8) + 訂單號(32)
+ * 寫入先進記憶體緩衝區，由 flush() 批量寫檔並 fsync（group commit）；緩衝區滿時由寫入方直接寫檔。
+ * 寫檔失敗時未寫出的紀錄留在緩衝區，下一次 flush 重試。
+ * 啟動時 replay 重建狀態，再以 compact() 把目前狀態寫成新檔後原子替換，日誌不會無限成長。
+ * 以 ReentrantLock 而非 synchronized 保護緩衝區，持鎖寫檔時不會釘住虛擬執行緒。
+ */
+public class InventoryJournal implements AutoCloseable {
+
+    public static final int RECORD_SIZE = 64;
+    public static final int MAX_SN_LENGTH = 32;
+
+    public static final byte SET = 1;
+    public static final byte RESERVE = 2;
+    public static final byte RELEASE = 3;
+    public static final byte PURCHASED = 4;   // 壓縮後的用戶已購數量
+    public static final byte RELEASED = 5;    // 壓縮後的已歸還訂單標記，值為歸還時間
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel;
+
+    public InventoryJournal(Path path, int bufferRecords) throws IOException {
+        this.path = path;
+        this.buffer = ByteBuffer.allocateDirect(bufferRecords * RECORD_SIZE);
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = open(path);
+    }
+
+    /**
+     * 追加一筆紀錄（尚未落盤，等下一次 flush）
+     */
+    public void append(byte type, long ticketId, long userId, int quantity, long value, String orderSn) {
+        lock.lock();
+        try {
+            if (buffer.remaining() < RECORD_SIZE) {
+                writeBuffer();
+            }
+            write(buffer, type, ticketId, userId, quantity, value, orderSn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 把緩衝區寫入檔案並 fsync
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            writeBuffer();
+            channel.force(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 依序讀出所有完整的紀錄，尾端寫到一半的紀錄（崩潰時）直接忽略
+     */
+    public void replay(Consumer<Record> consumer) throws IOException {
+        lock.lock();
+        try {
+            ByteBuffer chunk = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            byte[] sn = new byte[MAX_SN_LENGTH];
+            long position = 0;
+            while (true) {
+                chunk.clear();
+                int read = channel.read(chunk, position);
+                if (read < RECORD_SIZE) {
+                    break;
+                }
+                int records = read / RECORD_SIZE;
+                chunk.flip();
+                for (int i = 0; i < records; i++) {
+                    byte type = chunk.get();
+                    int snLength = chunk.get();
+                    chunk.getShort();
+                    int quantity = chunk.getInt();
+                    long ticketId = chunk.getLong();
+                    long userId = chunk.getLong();
+                    long value = chunk.getLong();
+                    chunk.get(sn);
+                    String orderSn = snLength > 0 ? new String(sn, 0, snLength, StandardCharsets.US_ASCII) : null;
+                    consumer.accept(new Record(type, ticketId, userId, quantity, value, orderSn));
+                }
+                position += (long) records * RECORD_SIZE;
+            }
+            // 截掉不完整的尾端，之後的寫入從完整紀錄後開始
+            channel.truncate(position);
+            channel.position(position);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 以目前狀態重寫日誌：writer 把狀態逐筆寫入新檔，fsync 後原子替換舊檔
+     */
+    public void compact(Consumer<Writer> writer) throws IOException {
+        lock.lock();
+        try {
+            writeBuffer();
+            Path temp = path.resolveSibling(path.getFileName() + ".compact");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer chunk = ByteBuffer.allocate(RECORD_SIZE * 1024);
+                writer.accept((type, ticketId, userId, quantity, value, orderSn) -> {
+                    if (chunk.remaining() < RECORD_SIZE) {
+                        drain(chunk, out);
+                    }
+                    write(chunk, type, ticketId, userId, quantity, value, orderSn);
+                });
+                drain(chunk, out);
+                out.force(true);
+            }
+            channel.close();
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = open(path);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            flush();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeBuffer() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        } catch (IOException e) {
+            // 保留尚未寫出的紀錄（接在已寫出的部分之後），下一次 flush 重試，不會遺失
+            buffer.compact();
+            throw new IllegalStateException("庫存日誌寫入失敗: " + path, e);
+        }
+    }
+
+    private static void drain(ByteBuffer chunk, FileChannel out) {
+        chunk.flip();
+        try {
+            while (chunk.hasRemaining()) {
+                out.write(chunk);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("庫存日誌壓縮失敗", e);
+        }
+        chunk.clear();
+    }
+
+    private static void write(ByteBuffer target, byte type, long ticketId, long userId, int quantity, long value,
+                              String orderSn) {
+        int start = target.position();
+        int snLength = orderSn != null ? orderSn.length() : 0;
+        if (snLength > MAX_SN_LENGTH) {
+            throw new IllegalArgumentException("訂單號過長: " + orderSn);
+        }
+        target.put(type);
+        target.put((byte) snLength);
+        target.putShort((short) 0);
+        target.putInt(quantity);
+        target.putLong(ticketId);
+        target.putLong(userId);
+        target.putLong(value);
+        for (int i = 0; i < snLength; i++) {
+            target.put((byte) orderSn.charAt(i));
+        }
+        target.position(start + RECORD_SIZE);
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    public record Record(byte type, long ticketId, long userId, int quantity, long value, String orderSn) {
+    }
+
+    @FunctionalInterface
+    public interface Writer {
+        void write(byte type, long ticketId, long userId, int quantity, long value, String orderSn);
+    }
+}
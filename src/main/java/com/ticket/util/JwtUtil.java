@@ -1,24 +1,55 @@
 package com.ticket.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtil {
-    
-    @Value("${jwt.secret:mySuperSecretKeyForTicketSystem2024@!mySuperSecretKeyForTicketSystem2024@!}")
-    private String secretKey;
-    
-    @Value("${jwt.expiration:86400000}")
-    private long expirationTime;
-
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secretKey.getBytes());
+
+    private final long expirationTime;
+
+    // 金鑰與 parser 只建一次，parser 為不可變物件可共用
+    private final SecretKey signingKey;
+    private final JwtParser parser;
+
+    // token -> claims 快取，條目在 token 過期時一併失效
+    private final Cache<String, Claims> claimsCache;
+    private final Timer verifyLatency;
+
+    public JwtUtil(@Value("${jwt.secret:mySuperSecretKeyForTicketSystem2024@!mySuperSecretKeyForTicketSystem2024@!}") String secretKey,
+                   @Value("${jwt.expiration:86400000}") long expirationTime,
+                   @Value("${jwt.cache.max-size:100000}") long cacheMaxSize,
+                   MeterRegistry meterRegistry) {
+        this.expirationTime = expirationTime;
+        this.signingKey = Keys.hmacShaKeyFor(secretKey.getBytes());
+        this.parser = Jwts.parser().verifyWith(signingKey).build();
+
+        this.claimsCache = cacheMaxSize > 0 ? Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new ClaimsExpiry())
+                .recordStats()
+                .build() : null;
+        if (claimsCache != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, claimsCache, "jwt.claims");
+        }
+        this.verifyLatency = Timer.builder("jwt.verify.latency")
+                .description("JWT 簽章驗證耗時（快取未命中）")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
     }
 
     public String generateToken(String username) {
@@ -26,28 +57,72 @@ public class JwtUtil {
                 .subject(username)
                 .issuedAt(new Date())
                 .expiration(new Date(System.currentTimeMillis() + expirationTime))
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 
+    /**
+     * 驗證並解析 token，無效或已過期回傳 null
+     * 驗證通過的 claims 會快取到 token 過期為止，同一 token 不必重複驗簽
+     */
+    public Claims parseClaims(String token) {
+        if (claimsCache == null) {
+            return verify(token);
+        }
+        Claims claims = claimsCache.getIfPresent(token);
+        if (claims != null) {
+            return claims;
+        }
+        claims = verify(token);
+        if (claims != null) {
+            claimsCache.put(token, claims);
+        }
+        return claims;
+    }
+
     public String extractUsername(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getSubject();
+        Claims claims = parseClaims(token);
+        if (claims == null) {
+            throw new IllegalArgumentException("無效的 JWT token");
+        }
+        return claims.getSubject();
     }
 
     public boolean validateToken(String token) {
+        return parseClaims(token) != null;
+    }
+
+    private Claims verify(String token) {
+        long start = System.nanoTime();
         try {
-            Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token);
-            return true;
+            return parser.parseSignedClaims(token).getPayload();
         } catch (Exception e) {
-            return false;
+            return null;
+        } finally {
+            verifyLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static class ClaimsExpiry implements Expiry<String, Claims> {
+
+        @Override
+        public long expireAfterCreate(String token, Claims claims, long currentTime) {
+            Date expiration = claims.getExpiration();
+            if (expiration == null) {
+                return Long.MAX_VALUE;
+            }
+            long remainingMillis = expiration.getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        }
+
+        @Override
+        public long expireAfterUpdate(String token, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String token, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
         }
     }
-}
\ No newline at end of file
+}
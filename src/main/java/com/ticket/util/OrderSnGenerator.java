@@ -0,0 +1,110 @@
+package com.ticket.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 訂單號生成器（Snowflake 風格）
+ * 64 位 = 41 位毫秒時間戳 + 10 位節點 ID + 12 位序號，單調遞增、可依時間排序。
+ * 時間戳與序號放在同一個 AtomicLong，以 CAS 推進，不加鎖；
+ * 同一毫秒序號用完時直接借用下一毫秒，時鐘回撥時沿用上次時間戳，保證不重複。
+ */
+@Component
+public class OrderSnGenerator {
+
+    private static final long EPOCH = 1704067200000L;  // 2024-01-01T00:00:00Z
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    // Crockford Base32，字元依 ASCII 遞增，定長編碼後字串排序與數值排序一致
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int ENCODED_LENGTH = 13;
+    private static final String PREFIX = "T";
+
+    private final long workerId;
+    private final AtomicLong state = new AtomicLong();  // (時間戳 << SEQUENCE_BITS) | 序號
+
+    public OrderSnGenerator(@Value("${ticket.order-sn.worker-id:-1}") long workerId) {
+        this.workerId = workerId >= 0 ? workerId : defaultWorkerId();
+        if (this.workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("worker-id 超出範圍: " + workerId);
+        }
+    }
+
+    /**
+     * 下一個 64 位 ID
+     */
+    public long nextId() {
+        while (true) {
+            long last = state.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            long next = now > (last >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : last + 1;
+            if (state.compareAndSet(last, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                return (timestamp << (WORKER_BITS + SEQUENCE_BITS))
+                        | (workerId << SEQUENCE_BITS)
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 下一個訂單號，例如 T0ABCDEFGHJKM（14 字元）
+     */
+    public String nextSn() {
+        return encode(nextId());
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    public static String encode(long id) {
+        char[] chars = new char[PREFIX.length() + ENCODED_LENGTH];
+        chars[0] = PREFIX.charAt(0);
+        for (int i = chars.length - 1; i >= PREFIX.length(); i--) {
+            chars[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    public static long decode(String sn) {
+        if (sn == null || sn.length() != PREFIX.length() + ENCODED_LENGTH || !sn.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("訂單號格式錯誤: " + sn);
+        }
+        long id = 0;
+        for (int i = PREFIX.length(); i < sn.length(); i++) {
+            int value = indexOf(sn.charAt(i));
+            if (value < 0) {
+                throw new IllegalArgumentException("訂單號格式錯誤: " + sn);
+            }
+            id = (id << 5) | value;
+        }
+        return id;
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 未設定 worker-id 時以主機名推導，多節點部署請明確指定避免碰撞
+    private static long defaultWorkerId() {
+        try {
+            return (InetAddress.getLocalHost().getHostName().hashCode() & Integer.MAX_VALUE) % (MAX_WORKER_ID + 1);
+        } catch (UnknownHostException e) {
+            return 0;
+        }
+    }
+}
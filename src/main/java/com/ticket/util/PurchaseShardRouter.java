@@ -0,0 +1,48 @@
+package com.ticket.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 搶票佇列分片路由
+ * 依 ticketId 雜湊到固定分片，同一票券的消息永遠落在同一個佇列，
+ * 由該佇列唯一的活躍消費者依序寫入；不同票券分散到不同佇列平行處理。
+ */
+@Component
+public class PurchaseShardRouter {
+
+    public static final String EXCHANGE = "ticket.purchase.exchange";
+    private static final String QUEUE_PREFIX = "ticket.purchase.queue.";
+    private static final String ROUTING_KEY_PREFIX = "ticket.purchase.";
+
+    private final int shards;
+
+    public PurchaseShardRouter(@Value("${ticket.mq.shards:4}") int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("ticket.mq.shards 至少為 1: " + shards);
+        }
+        this.shards = shards;
+    }
+
+    public int shardCount() {
+        return shards;
+    }
+
+    public int shardOf(Long ticketId) {
+        // 先打散再取模，避免連號票券集中在同一分片
+        long mixed = ticketId * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(mixed ^ (mixed >>> 32), (long) shards);
+    }
+
+    public String routingKey(Long ticketId) {
+        return ROUTING_KEY_PREFIX + shardOf(ticketId);
+    }
+
+    public static String queueName(int shard) {
+        return QUEUE_PREFIX + shard;
+    }
+
+    public static String routingKeyOf(int shard) {
+        return ROUTING_KEY_PREFIX + shard;
+    }
+}
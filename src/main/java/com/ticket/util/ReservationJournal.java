@@ -0,0 +1,267 @@
+package com.ticket.util;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 預扣紀錄日誌（memory-mapped，append-only）
+ * 每筆固定 64 bytes：狀態(1) + 訂單號長度(1) + 保留(2) + 數量(4) + 票券 ID(8) + 用戶 ID(8) + 預扣時間(8) + 訂單號(32)
+ * 寫入只是以 CAS 取得槽位後直接寫進映射記憶體，不經系統呼叫；行程崩潰時資料已在 page cache，
+ * 只有整機斷電才依賴 force()（由呼叫方定期執行，group commit）。
+ * 檔案分段（reservations-{序號}.journal，預先配置固定大小），寫滿即換段；
+ * 從最舊的段起，預扣全部確認或歸還的段整段刪除（compact）。
+ */
+public class ReservationJournal implements AutoCloseable {
+
+    public static final int RECORD_SIZE = 64;
+    public static final int MAX_SN_LENGTH = 32;
+
+    public static final byte RESERVED = 1;
+    public static final byte ACKNOWLEDGED = 2;   // broker 已確認，之後由消費者與逾時回收負責
+    public static final byte RELEASED = 3;       // 已歸還庫存
+
+    private static final String PREFIX = "reservations-";
+    private static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final int segmentRecords;
+    // 尚未確認的預扣 → 所在的段
+    private final Map<String, Segment> outstanding = new ConcurrentHashMap<>();
+    private final Queue<Segment> sealed = new ConcurrentLinkedQueue<>();
+    // 換段會建檔與映射，用 ReentrantLock 避免持鎖 IO 時釘住虛擬執行緒
+    private final ReentrantLock rotateLock = new ReentrantLock();
+    private volatile Segment current;
+
+    private ReservationJournal(Path directory, int segmentRecords) {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+    }
+
+    /**
+     * 開啟日誌目錄：讀出上次未確認的預扣，重新寫入新的一段並落盤後刪除舊段
+     * 回傳的預扣仍在 outstanding 中，由呼叫方重發或歸還後標記
+     */
+    public static Recovery open(Path directory, int segmentRecords) throws IOException {
+        Files.createDirectories(directory);
+        ReservationJournal journal = new ReservationJournal(directory, segmentRecords);
+        List<Path> previous = segmentFiles(directory);
+
+        Map<String, Entry> unresolved = new LinkedHashMap<>();
+        long nextId = 0;
+        for (Path file : previous) {
+            nextId = Math.max(nextId, segmentId(file) + 1);
+            scan(file, unresolved);
+        }
+
+        journal.current = journal.createSegment(nextId);
+        for (Entry entry : unresolved.values()) {
+            journal.reserve(entry.orderSn(), entry.ticketId(), entry.userId(), entry.quantity(), entry.reservedAt());
+        }
+        journal.current.buffer.force();
+        for (Path file : previous) {
+            Files.delete(file);
+        }
+        return new Recovery(journal, List.copyOf(unresolved.values()));
+    }
+
+    /**
+     * 登記預扣成功（尚未送達 broker）
+     */
+    public void reserve(String orderSn, long ticketId, long userId, int quantity, long reservedAt) {
+        Segment segment = append(RESERVED, orderSn, ticketId, userId, quantity, reservedAt);
+        outstanding.put(orderSn, segment);
+    }
+
+    /**
+     * 標記預扣已有結果（broker 確認或已歸還），重複標記或未登記的訂單直接略過
+     */
+    public boolean resolve(String orderSn, byte state) {
+        Segment segment = outstanding.remove(orderSn);
+        if (segment == null) {
+            return false;
+        }
+        append(state, orderSn, 0, 0, 0, 0).pending.decrementAndGet();
+        segment.pending.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * 把已寫入的紀錄落盤（舊段與目前段），再從最舊的段開始刪除預扣全部有結果的段，回傳刪除段數
+     * 確認／歸還紀錄寫在較新的段：只要更舊的段還有未確認的預扣就停止刪除，
+     * 否則重啟時舊段的 RESERVED 找不到對應結果，已送達的訂單會被誤判為未確認而歸還庫存。
+     */
+    public int flush() throws IOException {
+        current.buffer.force();
+        for (Segment segment : sealed) {
+            if (!segment.forced) {
+                segment.buffer.force();
+                segment.forced = true;
+            }
+        }
+        int deleted = 0;
+        for (Iterator<Segment> iterator = sealed.iterator(); iterator.hasNext(); ) {
+            Segment segment = iterator.next();
+            if (segment.pending.get() != 0) {
+                break;
+            }
+            Files.deleteIfExists(segment.file);
+            iterator.remove();
+            deleted++;
+        }
+        return deleted;
+    }
+
+    public int outstandingCount() {
+        return outstanding.size();
+    }
+
+    public int segmentCount() {
+        return sealed.size() + 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private Segment append(byte state, String orderSn, long ticketId, long userId, int quantity, long reservedAt) {
+        int snLength = orderSn.length();
+        if (snLength > MAX_SN_LENGTH) {
+            throw new IllegalArgumentException("訂單號過長: " + orderSn);
+        }
+        while (true) {
+            Segment segment = current;
+            // 先佔段內計數再取槽位，壓縮不會刪掉正在寫入的段
+            segment.pending.incrementAndGet();
+            long slot = segment.next.getAndIncrement();
+            if (slot < segmentRecords) {
+                segment.write((int) slot * RECORD_SIZE, state, orderSn, ticketId, userId, quantity, reservedAt);
+                return segment;
+            }
+            segment.pending.decrementAndGet();
+            rotate(segment);
+        }
+    }
+
+    private void rotate(Segment full) {
+        rotateLock.lock();
+        try {
+            if (current != full) {
+                return;
+            }
+            Segment next = createSegment(full.id + 1);
+            sealed.add(full);
+            current = next;
+        } catch (IOException e) {
+            throw new IllegalStateException("預扣日誌換段失敗: " + directory, e);
+        } finally {
+            rotateLock.unlock();
+        }
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Path file = directory.resolve(PREFIX + String.format("%016d", id) + SUFFIX);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE);
+            return new Segment(id, file, buffer);
+        }
+    }
+
+    /**
+     * 逐槽讀出一段：狀態為 0 的槽（未寫入或寫到一半）略過
+     */
+    private static void scan(Path file, Map<String, Entry> unresolved) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] sn = new byte[MAX_SN_LENGTH];
+            for (int offset = 0; offset + RECORD_SIZE <= buffer.capacity(); offset += RECORD_SIZE) {
+                byte state = buffer.get(offset);
+                int snLength = buffer.get(offset + 1);
+                if (state == 0 || snLength <= 0 || snLength > MAX_SN_LENGTH) {
+                    continue;
+                }
+                buffer.get(offset + 32, sn, 0, snLength);
+                String orderSn = new String(sn, 0, snLength, StandardCharsets.US_ASCII);
+                if (state == RESERVED) {
+                    unresolved.put(orderSn, new Entry(orderSn, buffer.getLong(offset + 8), buffer.getLong(offset + 16),
+                            buffer.getInt(offset + 4), buffer.getLong(offset + 24)));
+                } else {
+                    unresolved.remove(orderSn);
+                }
+            }
+        }
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static long segmentId(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final AtomicLong next = new AtomicLong();
+        // 段內尚未有結果的預扣 + 進行中的寫入，歸零且已封段才可刪除
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean forced;
+
+        private Segment(long id, Path file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        // 只用絕對位置寫入，不同槽位之間互不干擾；狀態最後寫，崩潰時寫到一半的槽讀起來是 0
+        private void write(int offset, byte state, String orderSn, long ticketId, long userId, int quantity,
+                           long reservedAt) {
+            int snLength = orderSn.length();
+            buffer.put(offset + 1, (byte) snLength);
+            buffer.putInt(offset + 4, quantity);
+            buffer.putLong(offset + 8, ticketId);
+            buffer.putLong(offset + 16, userId);
+            buffer.putLong(offset + 24, reservedAt);
+            for (int i = 0; i < snLength; i++) {
+                buffer.put(offset + 32 + i, (byte) orderSn.charAt(i));
+            }
+            buffer.put(offset, state);
+        }
+    }
+
+    /**
+     * 重啟時讀出的未確認預扣
+     */
+    public record Entry(String orderSn, long ticketId, long userId, int quantity, long reservedAt) {
+    }
+
+    public record Recovery(ReservationJournal journal, Collection<Entry> unresolved) {
+    }
+}
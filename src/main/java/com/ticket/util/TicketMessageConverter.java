@@ -0,0 +1,115 @@
+package com.ticket.util;
+
+import com.ticket.dto.TicketPurchaseMessage;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TicketPurchaseMessage 定長二進位編碼
+ * 版本號放在 content type，payload 為:
+ *   ticketId(8) + userId(8) + quantity(4) + snFlag(1) + orderSn
+ * orderSn 為 OrderSnGenerator 格式時壓縮成 8 位元組，否則以 長度(2) + UTF-8 存放。
+ * 其他類型或 JSON content type 的消息交給 Jackson 處理，佇列中的舊消息仍可消費。
+ */
+public class TicketMessageConverter implements MessageConverter {
+
+    public static final byte VERSION = 1;
+    public static final String CONTENT_TYPE = "application/x-ticket-purchase;v=" + VERSION;
+
+    private static final int FIXED_LENGTH = 8 + 8 + 4 + 1;
+    private static final byte SN_PACKED = 1;
+    private static final byte SN_RAW = 0;
+
+    private final Jackson2JsonMessageConverter jsonConverter = new Jackson2JsonMessageConverter();
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        if (!(object instanceof TicketPurchaseMessage message)) {
+            return jsonConverter.toMessage(object, messageProperties);
+        }
+        byte[] body = encode(message);
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        String contentType = message.getMessageProperties().getContentType();
+        if (contentType == null || !contentType.startsWith("application/x-ticket-purchase")) {
+            return jsonConverter.fromMessage(message);
+        }
+        if (!CONTENT_TYPE.equals(contentType)) {
+            throw new MessageConversionException("不支援的消息版本: " + contentType);
+        }
+        return decode(message.getBody());
+    }
+
+    public static byte[] encode(TicketPurchaseMessage message) {
+        if (message.getTicketId() == null || message.getUserId() == null
+                || message.getQuantity() == null || message.getOrderSn() == null) {
+            throw new MessageConversionException("消息欄位不完整: " + message);
+        }
+
+        long packedSn = 0;
+        byte[] rawSn = null;
+        try {
+            packedSn = OrderSnGenerator.decode(message.getOrderSn());
+            if (!OrderSnGenerator.encode(packedSn).equals(message.getOrderSn())) {
+                throw new IllegalArgumentException("訂單號無法無損壓縮");
+            }
+        } catch (IllegalArgumentException e) {
+            rawSn = message.getOrderSn().getBytes(StandardCharsets.UTF_8);
+            if (rawSn.length > Short.MAX_VALUE) {
+                throw new MessageConversionException("訂單號過長: " + rawSn.length + " bytes");
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_LENGTH + (rawSn == null ? 8 : 2 + rawSn.length));
+        buffer.putLong(message.getTicketId());
+        buffer.putLong(message.getUserId());
+        buffer.putInt(message.getQuantity());
+        if (rawSn == null) {
+            buffer.put(SN_PACKED);
+            buffer.putLong(packedSn);
+        } else {
+            buffer.put(SN_RAW);
+            buffer.putShort((short) rawSn.length);
+            buffer.put(rawSn);
+        }
+        return buffer.array();
+    }
+
+    public static TicketPurchaseMessage decode(byte[] body) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+            long ticketId = buffer.getLong();
+            long userId = buffer.getLong();
+            int quantity = buffer.getInt();
+
+            String orderSn;
+            if (buffer.get() == SN_PACKED) {
+                orderSn = OrderSnGenerator.encode(buffer.getLong());
+            } else {
+                int length = buffer.getShort();
+                // 長度損毀（負數或超過剩餘內容）一律視為格式錯誤，不讓其他例外漏出
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new MessageConversionException("訂單號長度不正確: " + length);
+                }
+                byte[] rawSn = new byte[length];
+                buffer.get(rawSn);
+                orderSn = new String(rawSn, StandardCharsets.UTF_8);
+            }
+            return new TicketPurchaseMessage(orderSn, ticketId, userId, quantity);
+        } catch (BufferUnderflowException e) {
+            throw new MessageConversionException("消息長度不正確: " + body.length + " bytes", e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+-- 套用外寄箱的資料庫扣減到 Redis 庫存（冪等）
+-- KEYS[1] 庫存 key, KEYS[2] 售罄標記 key, KEYS[3] 事件已套用標記, KEYS[4] 版本 key
+-- ARGV[1] 扣減數量, ARGV[2] 標記保留秒數, ARGV[3] 庫存事件頻道, ARGV[4] 票券 ID
+-- 回傳: 扣減後庫存, -1 已套用過, -2 庫存未初始化（之後預熱從資料庫載入，已包含本次扣減）
+
+if not redis.call('SET', KEYS[3], '1', 'NX', 'EX', ARGV[2]) then
+    return -1
+end
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return -2
+end
+
+-- 資料庫已成交，不檢查是否足夠
+local remaining = redis.call('DECRBY', KEYS[1], tonumber(ARGV[1]))
+-- 進行中的對帳修正會因版本不符而放棄
+redis.call('INCR', KEYS[4])
+
+if remaining <= 0 and redis.call('SET', KEYS[2], '1', 'NX') then
+    redis.call('PUBLISH', ARGV[3], ARGV[4] .. ':0')
+elseif remaining > 0 then
+    redis.call('PUBLISH', ARGV[3], ARGV[4] .. ':' .. remaining)
+end
+
+return remaining
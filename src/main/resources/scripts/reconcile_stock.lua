@@ -0,0 +1,29 @@
+-- 修正 Redis 庫存（compare-and-set）
+-- KEYS[1] 庫存 key, KEYS[2] 在途數量 key, KEYS[3] 庫存版本 (fence) key, KEYS[4] 售罄標記 key
+-- ARGV[1] 預期庫存, ARGV[2] 預期在途數量, ARGV[3] 預期版本（空字串 = 不存在）
+-- ARGV[4] 修正後庫存, ARGV[5] 庫存事件頻道, ARGV[6] 票券 ID
+-- 回傳: >= 0 修正後庫存, -1 快照之後已有變動（放棄修正）
+
+-- 快照之後有人預扣 / 歸還 / 重新初始化，這次比對就不可信
+local function changed(key, expected)
+    local current = redis.call('GET', key)
+    if expected == '' then
+        return current ~= false
+    end
+    return current ~= expected
+end
+
+if changed(KEYS[1], ARGV[1]) or changed(KEYS[2], ARGV[2]) or changed(KEYS[3], ARGV[3]) then
+    return -1
+end
+
+local value = tonumber(ARGV[4])
+redis.call('SET', KEYS[1], ARGV[4], 'KEEPTTL')
+redis.call('INCR', KEYS[3])
+
+if value > 0 then
+    redis.call('DEL', KEYS[4])
+end
+redis.call('PUBLISH', ARGV[5], ARGV[6] .. ':' .. ARGV[4])
+
+return value
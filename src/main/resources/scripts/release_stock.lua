@@ -0,0 +1,25 @@
+-- 歸還預扣庫存（補償）
+-- KEYS[1] 庫存 key, KEYS[2] 售罄標記 key, KEYS[3] 用戶已購數量 hash, KEYS[4] 訂單已歸還標記
+-- ARGV[1] 歸還數量, ARGV[2] 用戶 ID, ARGV[3] 庫存事件頻道, ARGV[4] 票券 ID, ARGV[5] 標記保留秒數
+-- 回傳: 歸還後庫存, -1 此訂單已歸還過
+
+-- 同一訂單只歸還一次，重複投遞或多處補償都不會多加庫存
+if not redis.call('SET', KEYS[4], '1', 'NX', 'EX', ARGV[5]) then
+    return -1
+end
+
+local quantity = tonumber(ARGV[1])
+local remaining = redis.call('INCRBY', KEYS[1], quantity)
+
+if remaining > 0 then
+    redis.call('DEL', KEYS[2])
+end
+
+local bought = redis.call('HINCRBY', KEYS[3], ARGV[2], -quantity)
+if bought <= 0 then
+    redis.call('HDEL', KEYS[3], ARGV[2])
+end
+
+redis.call('PUBLISH', ARGV[3], ARGV[4] .. ':' .. remaining)
+
+return remaining
@@ -0,0 +1,61 @@
+-- 原子預扣庫存
+-- KEYS[1] 庫存 key, KEYS[2] 售罄標記 key, KEYS[3] 用戶已購數量 hash, KEYS[4] 訂單狀態 hash
+-- KEYS[5] 預扣期限 zset, KEYS[6] 在途數量 key
+-- ARGV[1] 購買數量, ARGV[2] 用戶 ID, ARGV[3] 每人購買上限 (0 = 不限)
+-- ARGV[4] 庫存事件頻道, ARGV[5] 票券 ID, ARGV[6] 預扣時間 (epoch ms), ARGV[7] 訂單狀態保留秒數
+-- ARGV[8] 預扣期限 (epoch ms), ARGV[9] 訂單號
+-- 回傳: >= 0 剩餘庫存, -1 未初始化, -2 庫存不足, -3 超過購買上限
+
+-- 首次打上售罄標記時廣播，各節點的本地影子據此熔斷
+local function markSoldOut()
+    if redis.call('SET', KEYS[2], '1', 'NX') then
+        redis.call('PUBLISH', ARGV[4], ARGV[5] .. ':0')
+    end
+end
+
+if redis.call('EXISTS', KEYS[2]) == 1 then
+    return -2
+end
+
+local stock = redis.call('GET', KEYS[1])
+if not stock then
+    return -1
+end
+stock = tonumber(stock)
+
+local quantity = tonumber(ARGV[1])
+local limit = tonumber(ARGV[3])
+
+if limit > 0 then
+    local bought = tonumber(redis.call('HGET', KEYS[3], ARGV[2]) or '0')
+    if bought + quantity > limit then
+        return -3
+    end
+end
+
+if stock < quantity then
+    -- 只有真的賣完才打售罄標記，剩少量時買較少張的人仍可成功
+    if stock <= 0 then
+        markSoldOut()
+    end
+    return -2
+end
+
+local remaining = redis.call('DECRBY', KEYS[1], quantity)
+redis.call('HINCRBY', KEYS[3], ARGV[2], quantity)
+
+-- 同一次往返寫入 PENDING 訂單狀態，消費者完成後改為 PAID / FAILED
+redis.call('HSET', KEYS[4], 'status', 'PENDING', 'ticketId', ARGV[5], 'userId', ARGV[2],
+        'quantity', ARGV[1], 'createdAt', ARGV[6])
+redis.call('EXPIRE', KEYS[4], ARGV[7])
+
+-- 依期限登記，逾時未成單由 ReservationExpiryService 歸還庫存
+redis.call('ZADD', KEYS[5], ARGV[8], ARGV[9])
+-- 尚未有結果的預扣數量，對帳時 Redis 庫存 = 資料庫庫存 - 在途數量
+redis.call('INCRBY', KEYS[6], quantity)
+
+if remaining == 0 then
+    markSoldOut()
+end
+
+return remaining
@@ -0,0 +1,12 @@
+-- 結清預扣（訂單已有結果：成功 / 失敗 / 逾時）
+-- KEYS[1] 預扣期限 zset, KEYS[2] 票券在途數量 key
+-- ARGV[1] 訂單號, ARGV[2] 數量
+-- 回傳: 1 已結清, 0 此訂單之前已結清或不在預扣中
+
+-- ZREM 只會成功一次，重複推送結果不會重複扣減在途數量
+if redis.call('ZREM', KEYS[1], ARGV[1]) == 0 then
+    return 0
+end
+
+redis.call('DECRBY', KEYS[2], ARGV[2])
+return 1
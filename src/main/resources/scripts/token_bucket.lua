@@ -0,0 +1,42 @@
+-- 雙令牌桶限流（用戶 + 票券），兩個桶都有令牌才放行並各扣一枚
+-- KEYS[1] 用戶桶 hash, KEYS[2] 票券桶 hash（欄位 tokens / ts）
+-- ARGV[1] 用戶每秒補充數, ARGV[2] 用戶桶容量, ARGV[3] 票券每秒補充數, ARGV[4] 票券桶容量
+-- 回傳: 0 放行, > 0 建議重試等待毫秒數
+
+-- 以 Redis 時鐘計算，各節點時鐘不一致也不影響
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local function refill(key, rate, capacity)
+    local bucket = redis.call('HMGET', key, 'tokens', 'ts')
+    local tokens = tonumber(bucket[1]) or capacity
+    local ts = tonumber(bucket[2]) or now
+    return math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000)
+end
+
+-- 補滿所需時間過後 key 自然過期，閒置的桶不佔記憶體
+local function save(key, tokens, rate, capacity)
+    redis.call('HSET', key, 'tokens', tokens, 'ts', now)
+    redis.call('PEXPIRE', key, math.ceil((capacity - tokens) * 1000 / rate) + 1000)
+end
+
+local userRate, userCapacity = tonumber(ARGV[1]), tonumber(ARGV[2])
+local ticketRate, ticketCapacity = tonumber(ARGV[3]), tonumber(ARGV[4])
+
+local userTokens = refill(KEYS[1], userRate, userCapacity)
+local ticketTokens = refill(KEYS[2], ticketRate, ticketCapacity)
+
+if userTokens < 1 or ticketTokens < 1 then
+    local wait = 0
+    if userTokens < 1 then
+        wait = math.max(wait, (1 - userTokens) * 1000 / userRate)
+    end
+    if ticketTokens < 1 then
+        wait = math.max(wait, (1 - ticketTokens) * 1000 / ticketRate)
+    end
+    return math.max(1, math.ceil(wait))
+end
+
+save(KEYS[1], userTokens - 1, userRate, userCapacity)
+save(KEYS[2], ticketTokens - 1, ticketRate, ticketCapacity)
+return 0
@@ -0,0 +1,30 @@
+-- 等候室放行一批
+-- KEYS[1] 排隊 zset, KEYS[2] 已放行 zset, KEYS[3] 本輪放行鎖, KEYS[4] 等候中票券 set
+-- ARGV[1] 本輪最多放行人數, ARGV[2] 放行間隔 (ms), ARGV[3] 票券 ID
+-- ARGV[4] 現在時間 (epoch 秒), ARGV[5] 憑證到期時間 (epoch 秒), ARGV[6] 是否還有庫存 ('1' = 有，由庫存引擎判斷)
+-- 回傳: >= 0 本輪放行人數, -1 已售罄（停止放行）, -2 本輪已由其他節點放行
+
+if redis.call('ZCARD', KEYS[1]) == 0 then
+    redis.call('SREM', KEYS[4], ARGV[3])
+    return 0
+end
+
+-- 庫存歸零（或尚未載入）就不再放人進來搶，歸還庫存後自動恢復
+if ARGV[6] ~= '1' then
+    return -1
+end
+
+-- 每個間隔全叢集只放行一次，節點數不影響放行速率
+if not redis.call('SET', KEYS[3], '1', 'NX', 'PX', ARGV[2]) then
+    return -2
+end
+
+redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', ARGV[4])
+
+local popped = redis.call('ZPOPMIN', KEYS[1], ARGV[1])
+for i = 1, #popped, 2 do
+    redis.call('ZADD', KEYS[2], ARGV[5], popped[i])
+end
+redis.call('EXPIREAT', KEYS[2], ARGV[5])
+
+return #popped / 2
@@ -0,0 +1,19 @@
+-- 進入等候室，依到達順序排隊
+-- KEYS[1] 排隊 zset, KEYS[2] 到達序號 key, KEYS[3] 等候中票券 set, KEYS[4] 已放行 zset
+-- ARGV[1] client, ARGV[2] 票券 ID, ARGV[3] 現在時間 (epoch 秒)
+-- 回傳: >= 0 前方人數, -1 已放行且憑證仍有效
+
+local admitted = redis.call('ZSCORE', KEYS[4], ARGV[1])
+if admitted and tonumber(admitted) > tonumber(ARGV[3]) then
+    return -1
+end
+
+local rank = redis.call('ZRANK', KEYS[1], ARGV[1])
+if rank then
+    return rank
+end
+
+-- 重複進入不會重新排到隊尾，序號只在第一次進入時取得
+redis.call('ZADD', KEYS[1], redis.call('INCR', KEYS[2]), ARGV[1])
+redis.call('SADD', KEYS[3], ARGV[2])
+return redis.call('ZRANK', KEYS[1], ARGV[1])
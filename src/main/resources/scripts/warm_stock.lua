@@ -0,0 +1,26 @@
+-- 預熱庫存（只在 key 不存在時寫入，不覆蓋正在販售的計數）
+-- KEYS[1] 庫存 key, KEYS[2] 在途數量 key, KEYS[3] 售罄標記 key
+-- ARGV[1] 資料庫可售庫存, ARGV[2] 保留秒數（0 = 不過期）, ARGV[3] 庫存事件頻道, ARGV[4] 票券 ID
+-- 回傳: 1 已寫入, 0 已存在
+
+-- 資料庫庫存尚未扣掉預扣中的數量，直接寫入會多賣
+local inflight = tonumber(redis.call('GET', KEYS[2]) or '0')
+local stock = math.max(0, tonumber(ARGV[1]) - inflight)
+
+local ok
+if tonumber(ARGV[2]) > 0 then
+    ok = redis.call('SET', KEYS[1], stock, 'NX', 'EX', ARGV[2])
+else
+    ok = redis.call('SET', KEYS[1], stock, 'NX')
+end
+if not ok then
+    return 0
+end
+
+-- key 過期前留下的售罄標記會擋住新載入的庫存
+if stock > 0 then
+    redis.call('DEL', KEYS[3])
+end
+-- 各節點的本地影子可能還停在 key 過期前的售罄狀態，廣播新載入的庫存
+redis.call('PUBLISH', ARGV[3], ARGV[4] .. ':' .. stock)
+return 1
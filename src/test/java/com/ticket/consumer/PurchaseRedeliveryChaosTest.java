@@ -0,0 +1,188 @@
+package com.ticket.consumer;
+
+import com.ticket.dto.TicketPurchaseMessage;
+import com.ticket.entity.Order;
+import com.ticket.entity.Ticket;
+import com.ticket.repository.OrderRepository;
+import com.ticket.repository.TicketRepository;
+import com.ticket.service.InventoryEngine;
+import com.ticket.service.OrderBatchService;
+import com.ticket.service.OrderIdempotencyService;
+import com.ticket.service.OrderStatusService;
+import com.ticket.util.OrderSnGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 重複投遞混沌測試
+ * 每則消息隨機投遞 1~4 次、順序打亂，並隨機丟失冪等標記（模擬提交後、寫標記前當機），
+ * 驗證資料庫庫存只扣一次、每個訂單只有一筆、Redis 補償每單恰好一次。
+ *
+ * 資料庫以記憶體模擬：扣庫存先暫存，saveAll 視為交易提交點，
+ * 遇到重複 order_sn 時整筆回滾並拋出 DataIntegrityViolationException（唯一索引）。
+ */
+class PurchaseRedeliveryChaosTest {
+
+    private static final long TICKET_ID = 1L;
+    private static final int DB_STOCK = 100;
+    private static final int MESSAGES = 150;  // Redis 與 DB 有落差，部分消息會因庫存不足失敗
+
+    private final Random random = new Random();
+
+    private int committedStock;
+    private int stagedDelta;
+    private final Map<String, Order> orders = new HashMap<>();
+    private final Set<String> processedMarkers = new HashSet<>();
+    private final Map<String, Integer> releaseCalls = new HashMap<>();
+    private final Set<String> released = new HashSet<>();
+
+    private OrderBatchService orderBatchService;
+    private OrderIdempotencyService orderIdempotencyService;
+    private InventoryEngine inventoryEngine;
+
+    @BeforeEach
+    void setUp() {
+        committedStock = DB_STOCK;
+        stagedDelta = 0;
+
+        Ticket ticket = new Ticket();
+        ticket.setId(TICKET_ID);
+        ticket.setPrice(BigDecimal.TEN);
+
+        TicketRepository ticketRepository = mock(TicketRepository.class);
+        when(ticketRepository.findAllById(any())).thenReturn(List.of(ticket));
+        when(ticketRepository.decrementAvailableStock(anyLong(), anyInt())).thenAnswer(invocation -> {
+            int quantity = invocation.getArgument(1);
+            if (committedStock + stagedDelta < quantity) {
+                return 0;
+            }
+            stagedDelta -= quantity;
+            return 1;
+        });
+
+        OrderRepository orderRepository = mock(OrderRepository.class);
+        when(orderRepository.saveAll(any())).thenAnswer(invocation -> {
+            Iterable<Order> batch = invocation.getArgument(0);
+            commit(batch);
+            return batch;
+        });
+        when(orderRepository.save(any())).thenAnswer(invocation -> {
+            Order order = invocation.getArgument(0);
+            commit(List.of(order));
+            return order;
+        });
+        orderBatchService = new OrderBatchService(ticketRepository, orderRepository);
+
+        orderIdempotencyService = mock(OrderIdempotencyService.class);
+        when(orderIdempotencyService.isProcessed(anyString())).thenAnswer(invocation ->
+                processedMarkers.contains(invocation.<String>getArgument(0)));
+        when(orderIdempotencyService.filterUnprocessed(any())).thenAnswer(invocation ->
+                invocation.<List<TicketPurchaseMessage>>getArgument(0).stream()
+                        .filter(message -> !processedMarkers.contains(message.getOrderSn()))
+                        .toList());
+        doAnswer(invocation -> {
+            for (String orderSn : invocation.<Collection<String>>getArgument(0)) {
+                if (random.nextInt(10) >= 3) {  // 30% 標記遺失
+                    processedMarkers.add(orderSn);
+                }
+            }
+            return null;
+        }).when(orderIdempotencyService).markProcessed(any());
+
+        inventoryEngine = mock(InventoryEngine.class);
+        when(inventoryEngine.release(anyString(), anyLong(), anyLong(), anyInt())).thenAnswer(invocation -> {
+            String orderSn = invocation.getArgument(0);
+            releaseCalls.merge(orderSn, 1, Integer::sum);
+            return released.add(orderSn) ? 1L : null;
+        });
+    }
+
+    @RepeatedTest(5)
+    void singleConsumerSurvivesRedelivery() {
+        TicketPurchaseConsumer consumer = new TicketPurchaseConsumer(orderBatchService, orderIdempotencyService, inventoryEngine,
+                mock(OrderStatusService.class));
+
+        deliveries().forEach(consumer::processPurchase);
+
+        assertConsistent();
+    }
+
+    @RepeatedTest(5)
+    void batchConsumerSurvivesRedelivery() {
+        TicketPurchaseBatchConsumer consumer = new TicketPurchaseBatchConsumer(orderBatchService, orderIdempotencyService, inventoryEngine,
+                mock(OrderStatusService.class));
+
+        List<TicketPurchaseMessage> deliveries = deliveries();
+        for (int from = 0; from < deliveries.size(); ) {
+            int to = Math.min(deliveries.size(), from + 1 + random.nextInt(20));
+            consumer.processPurchases(deliveries.subList(from, to));
+            from = to;
+        }
+
+        assertConsistent();
+    }
+
+    private List<TicketPurchaseMessage> deliveries() {
+        OrderSnGenerator generator = new OrderSnGenerator(1);
+        List<TicketPurchaseMessage> deliveries = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            TicketPurchaseMessage message = new TicketPurchaseMessage(generator.nextSn(), TICKET_ID, (long) i, 1);
+            int times = 1 + random.nextInt(4);
+            for (int t = 0; t < times; t++) {
+                deliveries.add(message);
+            }
+        }
+        Collections.shuffle(deliveries, random);
+        return deliveries;
+    }
+
+    private void commit(Iterable<Order> batch) {
+        Set<String> seen = new HashSet<>();
+        for (Order order : batch) {
+            if (orders.containsKey(order.getOrderSn()) || !seen.add(order.getOrderSn())) {
+                stagedDelta = 0;
+                throw new DataIntegrityViolationException("duplicate key value violates unique constraint: " + order.getOrderSn());
+            }
+        }
+        batch.forEach(order -> orders.put(order.getOrderSn(), order));
+        committedStock += stagedDelta;
+        stagedDelta = 0;
+    }
+
+    private void assertConsistent() {
+        long paid = orders.values().stream().filter(order -> order.getStatus() == Order.OrderStatus.PAID).count();
+        long failed = orders.values().stream().filter(order -> order.getStatus() == Order.OrderStatus.FAILED).count();
+
+        assertEquals(0, committedStock, "DB 庫存必須剛好扣完");
+        assertEquals(MESSAGES, orders.size(), "每個 orderSn 只有一筆訂單");
+        assertEquals(DB_STOCK, paid);
+        assertEquals(MESSAGES - DB_STOCK, failed);
+
+        assertEquals(MESSAGES - DB_STOCK, released.size(), "每張失敗訂單恰好歸還一次");
+        releaseCalls.forEach((orderSn, calls) -> {
+            assertEquals(1, calls, "補償只觸發一次: " + orderSn);
+            assertEquals(Order.OrderStatus.FAILED, orders.get(orderSn).getStatus());
+        });
+    }
+}
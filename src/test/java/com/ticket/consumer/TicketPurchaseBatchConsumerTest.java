@@ -0,0 +1,61 @@
+package com.ticket.consumer;
+
+import com.ticket.dto.TicketPurchaseMessage;
+import com.ticket.entity.Order;
+import com.ticket.service.InventoryEngine;
+import com.ticket.service.OrderBatchService;
+import com.ticket.service.OrderIdempotencyService;
+import com.ticket.service.OrderStatusService;
+import com.ticket.service.OrderStatusService.OrderStatusUpdate;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 整批交易提交後，歸還庫存失敗不能觸發逐筆重跑，其他訂單的結果照常推送
+ */
+class TicketPurchaseBatchConsumerTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void releaseFailureAfterCommitDoesNotReplayTheBatch() {
+        TicketPurchaseMessage paid = new TicketPurchaseMessage("A", 1L, 7L, 1);
+        TicketPurchaseMessage rejected = new TicketPurchaseMessage("B", 1L, 8L, 2);
+        List<TicketPurchaseMessage> batch = List.of(paid, rejected);
+
+        OrderBatchService orderBatchService = mock(OrderBatchService.class);
+        when(orderBatchService.applyBatch(anyList()))
+                .thenReturn(new OrderBatchService.BatchResult(List.of(paid), List.of(rejected)));
+        OrderIdempotencyService idempotencyService = mock(OrderIdempotencyService.class);
+        when(idempotencyService.filterUnprocessed(batch)).thenReturn(batch);
+        InventoryEngine inventoryEngine = mock(InventoryEngine.class);
+        doThrow(new RuntimeException("connection refused")).when(inventoryEngine).release("B", 1L, 8L, 2);
+        OrderStatusService statusService = mock(OrderStatusService.class);
+
+        new TicketPurchaseBatchConsumer(orderBatchService, idempotencyService, inventoryEngine, statusService)
+                .processPurchases(batch);
+
+        verify(orderBatchService, times(1)).applyBatch(anyList());
+        verify(orderBatchService, never()).saveFailedOrder(any(), any());
+        verify(idempotencyService).markProcessed(List.of("A", "B"));
+
+        ArgumentCaptor<List<OrderStatusUpdate>> published = ArgumentCaptor.forClass(List.class);
+        verify(statusService).publish(published.capture());
+        Map<String, Order.OrderStatus> statuses = published.getValue().stream()
+                .collect(Collectors.toMap(OrderStatusUpdate::orderSn, OrderStatusUpdate::status));
+        assertEquals(Map.of("A", Order.OrderStatus.PAID, "B", Order.OrderStatus.FAILED), statuses);
+    }
+}
@@ -0,0 +1,80 @@
+package com.ticket.consumer;
+
+import com.ticket.dto.TicketPurchaseMessage;
+import com.ticket.entity.Order;
+import com.ticket.service.InventoryEngine;
+import com.ticket.service.OrderBatchService;
+import com.ticket.service.OrderIdempotencyService;
+import com.ticket.service.OrderStatusService;
+import com.ticket.service.OrderStatusService.OrderStatusUpdate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 交易提交後的歸還與推送不在交易的 try 內：失敗不會把已提交的結果改成系統錯誤
+ */
+class TicketPurchaseConsumerTest {
+
+    private final TicketPurchaseMessage message = new TicketPurchaseMessage("A", 1L, 7L, 2);
+
+    private OrderBatchService orderBatchService;
+    private OrderIdempotencyService idempotencyService;
+    private InventoryEngine inventoryEngine;
+    private OrderStatusService statusService;
+    private TicketPurchaseConsumer consumer;
+
+    @BeforeEach
+    void setUp() {
+        orderBatchService = mock(OrderBatchService.class);
+        idempotencyService = mock(OrderIdempotencyService.class);
+        inventoryEngine = mock(InventoryEngine.class);
+        statusService = mock(OrderStatusService.class);
+        consumer = new TicketPurchaseConsumer(orderBatchService, idempotencyService, inventoryEngine, statusService);
+    }
+
+    @Test
+    void paidOrderIsNeverReleased() {
+        when(orderBatchService.applyBatch(anyList()))
+                .thenReturn(new OrderBatchService.BatchResult(List.of(message), List.of()));
+
+        consumer.processPurchase(message);
+
+        verify(inventoryEngine, never()).release(any(), any(), any(), any());
+        assertEquals(Order.OrderStatus.PAID, publishedStatus().status());
+        verify(idempotencyService).markProcessed(List.of("A"));
+    }
+
+    @Test
+    void releaseFailureKeepsTheRejectedResult() {
+        when(orderBatchService.applyBatch(anyList()))
+                .thenReturn(new OrderBatchService.BatchResult(List.of(), List.of(message)));
+        doThrow(new RuntimeException("connection refused")).when(inventoryEngine).release("A", 1L, 7L, 2);
+
+        consumer.processPurchase(message);
+
+        verify(orderBatchService, never()).saveFailedOrder(any(), any());
+        OrderStatusUpdate update = publishedStatus();
+        assertEquals(Order.OrderStatus.FAILED, update.status());
+        assertEquals("庫存不足", update.message());
+        verify(idempotencyService).markProcessed(List.of("A"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private OrderStatusUpdate publishedStatus() {
+        ArgumentCaptor<List<OrderStatusUpdate>> published = ArgumentCaptor.forClass(List.class);
+        verify(statusService).publish(published.capture());
+        return published.getValue().get(0);
+    }
+}
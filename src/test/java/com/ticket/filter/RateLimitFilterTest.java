@@ -0,0 +1,85 @@
+package com.ticket.filter;
+
+import com.ticket.service.RateLimitService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 限流：本地桶先擋下洪水（不碰 Redis）、Redis 桶拒絕時回 429 + Retry-After、非搶票路徑不限流
+ */
+class RateLimitFilterTest {
+
+    private StringRedisTemplate redis;
+    private RateLimitFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        redis = mock(StringRedisTemplate.class);
+        RateLimitService service = new RateLimitService(redis, new SimpleMeterRegistry(), 100);
+        ReflectionTestUtils.setField(service, "localPermitsPerSecond", 0.001);
+        ReflectionTestUtils.setField(service, "localBurst", 2.0);
+        filter = new RateLimitFilter(service);
+    }
+
+    @Test
+    void localBucketRejectsWithoutRedis() throws Exception {
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(0L);
+
+        assertEquals(200, purchase().getStatus());
+        assertEquals(200, purchase().getStatus());
+        MockHttpServletResponse rejected = purchase();
+
+        assertEquals(429, rejected.getStatus());
+        assertNotNull(rejected.getHeader("Retry-After"));
+    }
+
+    @Test
+    void redisBucketRejectionReturnsRetryAfterSeconds() throws Exception {
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(1500L);
+
+        MockHttpServletResponse response = purchase();
+
+        assertEquals(429, response.getStatus());
+        assertEquals("2", response.getHeader("Retry-After"));
+    }
+
+    @Test
+    void otherPathsAreNotLimited() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/tickets/1/init-redis");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertNotNull(chain.getRequest());
+        verify(redis, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    private MockHttpServletResponse purchase() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/tickets/1/purchase-async");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        if (response.getStatus() == 429) {
+            assertNull(chain.getRequest());
+        }
+        return response;
+    }
+}
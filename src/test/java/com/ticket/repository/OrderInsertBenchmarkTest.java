@@ -0,0 +1,97 @@
+package com.ticket.repository;
+
+import com.ticket.entity.Order;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 訂單寫入吞吐量對比（需要 docker compose 環境）
+ * mvn test -Dtest=OrderInsertBenchmarkTest -Dbenchmark=true
+ *
+ * 逐筆 flush 模擬 IDENTITY 主鍵（每筆 INSERT 都要立即執行取回 id），
+ * saveAll 則走 pooled 序列 + JDBC batch。
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class OrderInsertBenchmarkTest {
+
+    private static final int ROWS = 10_000;
+    private static final String SN_PREFIX = "BENCH";
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM orders WHERE order_sn LIKE ?", SN_PREFIX + "%");
+    }
+
+    @Test
+    void rowByRowVersusBatched() {
+        // 預熱
+        insertRowByRow(newOrders("W1", 1_000));
+        insertBatched(newOrders("W2", 1_000));
+
+        long rowByRow = insertRowByRow(newOrders("R", ROWS));
+        long batched = insertBatched(newOrders("B", ROWS));
+
+        System.out.printf("📊 逐筆寫入: %d 筆, %d ms, %.0f inserts/sec%n", ROWS, rowByRow, ROWS * 1000.0 / rowByRow);
+        System.out.printf("📊 批量寫入: %d 筆, %d ms, %.0f inserts/sec%n", ROWS, batched, ROWS * 1000.0 / batched);
+    }
+
+    private long insertRowByRow(List<Order> orders) {
+        long start = System.currentTimeMillis();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Order order : orders) {
+                entityManager.persist(order);
+                entityManager.flush();
+            }
+            entityManager.clear();
+        });
+        return System.currentTimeMillis() - start;
+    }
+
+    private long insertBatched(List<Order> orders) {
+        long start = System.currentTimeMillis();
+        transactionTemplate.executeWithoutResult(status -> {
+            orderRepository.saveAll(orders);
+            entityManager.flush();
+            entityManager.clear();
+        });
+        return System.currentTimeMillis() - start;
+    }
+
+    private List<Order> newOrders(String tag, int count) {
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Order order = new Order();
+            order.setOrderSn(SN_PREFIX + tag + i);
+            order.setUserId(1L);
+            order.setTicketId(1L);
+            order.setQuantity(1);
+            order.setTotalAmount(BigDecimal.TEN);
+            order.setStatus(Order.OrderStatus.PAID);
+            orders.add(order);
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,101 @@
+package com.ticket.service;
+
+import com.ticket.dto.ReservationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 搶票預扣：Redis 引擎（Lua 一次往返）vs 本地引擎（CAS + 日誌）
+ * redis 需要本機 6379 的 Redis；沒有 Redis 時只跑本地引擎：
+ * mvn -Pbenchmark test "-Djmh.include=InventoryEngineBenchmark -p engine=local"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryEngineBenchmark {
+
+    private static final long TICKET_ID = 900_001L;
+
+    @Param({"local", "redis"})
+    public String engine;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private InventoryEngine inventoryEngine;
+    private LocalInventoryEngine localEngine;
+    private LettuceConnectionFactory connectionFactory;
+    private Path journalDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if ("local".equals(engine)) {
+            journalDir = Files.createTempDirectory("inventory-bench");
+            localEngine = new LocalInventoryEngine(journalDir.resolve("inventory.journal").toString(), 24);
+            ReflectionTestUtils.setField(localEngine, "fsyncIntervalMillis", 10L);
+            ReflectionTestUtils.setField(localEngine, "bufferRecords", 4096);
+            localEngine.start();
+            inventoryEngine = localEngine;
+        } else {
+            connectionFactory = new LettuceConnectionFactory("localhost", 6379);
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+            RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+            redisTemplate.setConnectionFactory(connectionFactory);
+            redisTemplate.setKeySerializer(new StringRedisSerializer());
+            redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+            redisTemplate.afterPropertiesSet();
+            RedisService redisService = new RedisService(redisTemplate, new StringRedisTemplate(connectionFactory));
+            ReflectionTestUtils.setField(redisService, "orderStatusTtlSeconds", 60L);
+            ReflectionTestUtils.setField(redisService, "reservationTtlSeconds", 60L);
+            redisService.deleteStock(TICKET_ID);
+            inventoryEngine = new RedisInventoryEngine(redisService);
+        }
+        inventoryEngine.setStock(TICKET_ID, Integer.MAX_VALUE, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (localEngine != null) {
+            localEngine.stop();
+        }
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @Benchmark
+    public ReservationResult reserve() {
+        return inventoryEngine.reserve("B" + sequence.incrementAndGet(), TICKET_ID, 1L, 1);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ReservationResult reserveContended() {
+        return reserve();
+    }
+}
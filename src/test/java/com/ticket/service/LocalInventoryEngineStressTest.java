@@ -0,0 +1,152 @@
+package com.ticket.service;
+
+import com.ticket.dto.ReservationResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 本地庫存引擎：大量執行緒同時搶同一張票不超賣、重複歸還只生效一次、重啟後日誌重播還原狀態
+ */
+class LocalInventoryEngineStressTest {
+
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 500;
+    private static final int STOCK = 2000;
+
+    @TempDir
+    Path dir;
+
+    private final List<LocalInventoryEngine> engines = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (LocalInventoryEngine engine : engines) {
+            engine.stop();
+        }
+    }
+
+    @RepeatedTest(5)
+    void concurrentReservationsNeverOversell() throws Exception {
+        LocalInventoryEngine engine = start(0);
+        engine.setStock(1L, STOCK, null);
+
+        Queue<Reserved> reserved = new ConcurrentLinkedQueue<>();
+        AtomicLong sold = new AtomicLong();
+        AtomicInteger sequence = new AtomicInteger();
+        run(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                String orderSn = "T" + sequence.incrementAndGet();
+                long userId = random.nextLong(1, 1000);
+                int quantity = random.nextInt(1, 4);
+                ReservationResult result = engine.reserve(orderSn, 1L, userId, quantity);
+                if (result.isSuccess()) {
+                    sold.addAndGet(quantity);
+                    reserved.add(new Reserved(orderSn, userId, quantity));
+                }
+            }
+        });
+
+        // 需求遠大於庫存：賣出量不超過庫存，且與剩餘庫存加總一致
+        assertEquals(STOCK, sold.get() + engine.getStock(1L));
+
+        // 每筆訂單由兩個執行緒同時歸還，只會加回一次
+        List<Reserved> orders = new ArrayList<>(reserved);
+        run(() -> orders.forEach(order -> engine.release(order.orderSn(), 1L, order.userId(), order.quantity())));
+
+        assertEquals(STOCK, engine.getStock(1L));
+    }
+
+    @Test
+    void replayRestoresStockLimitsAndReleasedOrders() throws Exception {
+        LocalInventoryEngine engine = start(2);
+        engine.setStock(1L, 10, null);
+        engine.reserve("T1", 1L, 7L, 2);
+        engine.reserve("T2", 1L, 8L, 1);
+        engine.release("T2", 1L, 8L, 1);
+        engine.stop();
+        engines.clear();
+
+        LocalInventoryEngine restarted = start(2);
+
+        assertEquals(8, restarted.getStock(1L));
+        assertEquals(ReservationResult.Status.LIMIT_EXCEEDED, restarted.reserve("T3", 1L, 7L, 1).getStatus());
+        assertNull(restarted.release("T2", 1L, 8L, 1));
+        assertEquals(7L, restarted.reserve("T4", 1L, 8L, 1).getRemainingStock());
+    }
+
+    @Test
+    void tornTailRecordIsIgnored() throws Exception {
+        LocalInventoryEngine engine = start(0);
+        engine.setStock(1L, 5, null);
+        engine.reserve("T1", 1L, 1L, 1);
+        engine.stop();
+        engines.clear();
+        // 模擬崩潰時寫到一半的紀錄
+        Files.write(journal(), new byte[]{2, 2, 0, 0, 0, 0, 0, 1}, StandardOpenOption.APPEND);
+
+        LocalInventoryEngine restarted = start(0);
+
+        assertEquals(4, restarted.getStock(1L));
+        assertEquals(3L, restarted.reserve("T2", 1L, 1L, 1).getRemainingStock());
+    }
+
+    private LocalInventoryEngine start(int maxPerUser) throws Exception {
+        LocalInventoryEngine engine = new LocalInventoryEngine(journal().toString(), 24);
+        ReflectionTestUtils.setField(engine, "maxPerUser", maxPerUser);
+        ReflectionTestUtils.setField(engine, "fsyncIntervalMillis", 5L);
+        ReflectionTestUtils.setField(engine, "bufferRecords", 256);
+        engine.start();
+        engines.add(engine);
+        return engine;
+    }
+
+    private Path journal() {
+        return dir.resolve("inventory.journal");
+    }
+
+    private static void run(Runnable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch ready = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    ready.await();
+                    task.run();
+                    return null;
+                }));
+            }
+            ready.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private record Reserved(String orderSn, long userId, int quantity) {
+    }
+}
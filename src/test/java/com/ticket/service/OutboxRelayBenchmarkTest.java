@@ -0,0 +1,78 @@
+package com.ticket.service;
+
+import com.ticket.entity.OutboxEvent;
+import com.ticket.repository.OutboxEventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 外寄箱轉送吞吐量（需要 docker compose 環境）
+ * mvn test -Dtest=OutboxRelayBenchmarkTest -Dbenchmark=true
+ *
+ * 先寫入一批事件，再由單一 relay 逐批轉送到清空，不同 batch-size 各跑一次。
+ */
+@SpringBootTest(properties = "ticket.outbox.relay.enabled=false")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class OutboxRelayBenchmarkTest {
+
+    private static final int ROWS = 20_000;
+    private static final long TICKET_ID = 9_000_001L;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM outbox_events WHERE ticket_id = ?", TICKET_ID);
+        redisService.deleteStock(TICKET_ID);
+    }
+
+    @Test
+    void relayThroughput() {
+        // 預熱
+        relay(100, 2_000);
+
+        for (int batchSize : new int[]{100, 500, 1000}) {
+            long elapsed = relay(batchSize, ROWS);
+            System.out.printf("📊 外寄箱轉送 batch=%d: %d 筆, %d ms, %.0f rows/sec%n",
+                    batchSize, ROWS, elapsed, ROWS * 1000.0 / elapsed);
+        }
+    }
+
+    private long relay(int batchSize, int rows) {
+        redisService.setStock(TICKET_ID, rows, null);
+        List<OutboxEvent> events = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            events.add(OutboxEvent.stockDecremented(TICKET_ID, "BENCH" + batchSize + "-" + i, 1));
+        }
+        transactionTemplate.executeWithoutResult(status -> outboxEventRepository.saveAll(events));
+        ReflectionTestUtils.setField(outboxRelay, "batchSize", batchSize);
+
+        long start = System.currentTimeMillis();
+        while (outboxRelay.relayBatch() > 0) {
+            // 轉送到清空
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
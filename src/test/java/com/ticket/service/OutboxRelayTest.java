@@ -0,0 +1,86 @@
+package com.ticket.service;
+
+import com.ticket.entity.OutboxEvent;
+import com.ticket.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 外寄箱轉送：先套用到 Redis 再刪除事件；Redis 失敗時事件保留（交易回滾），下一輪重做
+ */
+class OutboxRelayTest {
+
+    private OutboxEventRepository repository;
+    private RedisService redisService;
+    private PlatformTransactionManager transactionManager;
+    private SimpleMeterRegistry meterRegistry;
+    private OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(OutboxEventRepository.class);
+        redisService = mock(RedisService.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        meterRegistry = new SimpleMeterRegistry();
+        relay = new OutboxRelay(repository, redisService, new TransactionTemplate(transactionManager), meterRegistry);
+        ReflectionTestUtils.setField(relay, "batchSize", 2);
+    }
+
+    @Test
+    void appliesThenDeletesInOneTransaction() {
+        List<OutboxEvent> events = List.of(event(1L, 5), event(2L, 1));
+        when(repository.lockBatch(2)).thenReturn(events);
+
+        assertEquals(2, relay.relayBatch());
+
+        var order = inOrder(redisService, repository, transactionManager);
+        order.verify(redisService).applyStockDecrements(events);
+        order.verify(repository).deleteAllInBatch(events);
+        order.verify(transactionManager).commit(any());
+        assertEquals(2.0, meterRegistry.counter("ticket.outbox.relayed").count());
+        assertEquals(5.0, meterRegistry.get("ticket.outbox.lag.seconds").gauge().value(), 1.0);
+    }
+
+    @Test
+    void keepsEventsWhenRedisFails() {
+        when(repository.lockBatch(2)).thenReturn(List.of(event(1L, 0)));
+        when(redisService.applyStockDecrements(anyList())).thenThrow(new RuntimeException("connection refused"));
+
+        assertThrows(RuntimeException.class, relay::relayBatch);
+
+        verify(repository, never()).deleteAllInBatch(anyList());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void emptyOutboxResetsLag() {
+        when(repository.lockBatch(2)).thenReturn(List.of());
+
+        assertEquals(0, relay.relayBatch());
+        assertEquals(0.0, meterRegistry.get("ticket.outbox.lag.seconds").gauge().value());
+    }
+
+    private static OutboxEvent event(Long id, int ageSeconds) {
+        OutboxEvent event = OutboxEvent.stockDecremented(1L, "T" + id, 1);
+        event.setId(id);
+        event.setCreatedAt(LocalDateTime.now().minusSeconds(ageSeconds));
+        return event;
+    }
+}
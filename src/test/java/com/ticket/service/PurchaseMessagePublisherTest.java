@@ -0,0 +1,105 @@
+package com.ticket.service;
+
+import com.ticket.dto.TicketPurchaseMessage;
+import com.ticket.util.PurchaseShardRouter;
+import com.ticket.util.ReservationJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 發送失敗只歸還沒交給 channel 的消息；確認逾時或重啟時未確認的預扣可能已送達，不歸還，交給預扣逾時回收
+ */
+class PurchaseMessagePublisherTest {
+
+    private RabbitTemplate rabbitTemplate;
+    private RabbitOperations operations;
+    private InventoryEngine inventoryEngine;
+    private ReservationJournalService journalService;
+    private PurchaseMessagePublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        rabbitTemplate = mock(RabbitTemplate.class);
+        operations = mock(RabbitOperations.class);
+        when(rabbitTemplate.invoke(any())).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(operations));
+        inventoryEngine = mock(InventoryEngine.class);
+        journalService = mock(ReservationJournalService.class);
+        publisher = new PurchaseMessagePublisher(rabbitTemplate, inventoryEngine, mock(OrderStatusService.class),
+                new PurchaseShardRouter(4), journalService, new SimpleMeterRegistry(), 16);
+    }
+
+    @Test
+    void sendFailureOnlyReleasesUnsentMessages() {
+        List<TicketPurchaseMessage> batch = List.of(message("A"), message("B"), message("C"));
+        doThrow(new AmqpException("channel closed")).when(operations).convertAndSend(anyString(), anyString(),
+                eq(batch.get(1)), any(CorrelationData.class));
+
+        assertThrows(AmqpException.class, () -> ReflectionTestUtils.invokeMethod(publisher, "publishBatch", batch));
+
+        // A 已送出，等確認；B、C 沒送到 broker，立即歸還
+        verify(inventoryEngine, never()).release(eq("A"), any(), any(), any());
+        verify(inventoryEngine).release("B", 1L, 7L, 1);
+        verify(inventoryEngine).release("C", 1L, 7L, 1);
+        assertEquals(List.of("A"), List.copyOf(pendingConfirms().keySet()));
+    }
+
+    @Test
+    void confirmTimeoutDoesNotReleaseStock() {
+        ReflectionTestUtils.invokeMethod(publisher, "publishBatch", List.of(message("A")));
+        ReflectionTestUtils.setField(publisher, "confirmTimeoutMillis", -1L);
+
+        ReflectionTestUtils.invokeMethod(publisher, "expireOverdueConfirms");
+
+        assertTrue(pendingConfirms().isEmpty());
+        verify(inventoryEngine, never()).release(any(), any(), any(), any());
+        verify(journalService).acknowledged("A");
+    }
+
+    @Test
+    void recoveryNeverReleasesUnconfirmedReservations() {
+        ReflectionTestUtils.setField(publisher, "reservationTtlSeconds", 900L);
+        long now = System.currentTimeMillis();
+        when(journalService.takeUnresolved()).thenReturn(List.of(
+                new ReservationJournal.Entry("OLD", 1L, 7L, 1, now - 901_000L),
+                new ReservationJournal.Entry("NEW", 1L, 7L, 1, now)));
+
+        publisher.recover();
+
+        // 超過保留時間的可能已送達，交給逾時回收；仍在保留時間內的重發
+        verify(inventoryEngine, never()).release(any(), any(), any(), any());
+        verify(journalService).acknowledged("OLD");
+        verify(journalService, never()).acknowledged("NEW");
+        assertEquals(1, ((BlockingQueue<?>) ReflectionTestUtils.getField(publisher, "buffer")).size());
+    }
+
+    private Map<?, ?> pendingConfirms() {
+        return (Map<?, ?>) ReflectionTestUtils.getField(publisher, "pendingConfirms");
+    }
+
+    private static TicketPurchaseMessage message(String orderSn) {
+        return new TicketPurchaseMessage(orderSn, 1L, 7L, 1);
+    }
+}
@@ -0,0 +1,103 @@
+package com.ticket.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 純DB搶票模式對比：樂觀鎖重試 / 悲觀鎖 / 單一語句 CTE（需要 docker compose 環境）
+ * mvn test -Dtest=PurchaseModeBenchmarkTest -Dbenchmark=true
+ *
+ * 同一張熱門票券、固定併發，每種模式各跑一輪，輸出吞吐量、p99 與成功筆數，
+ * 並檢查「訂單數 = 扣掉的庫存」（不超賣、不漏單）。
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class PurchaseModeBenchmarkTest {
+
+    private static final long TICKET_ID = 9_000_002L;
+    private static final int STOCK = 2_000;
+    private static final int REQUESTS = 4_000;
+    private static final int THREADS = 64;
+
+    @Autowired
+    private TicketService ticketService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM orders WHERE ticket_id = ?", TICKET_ID);
+        jdbcTemplate.update("DELETE FROM tickets WHERE id = ?", TICKET_ID);
+    }
+
+    @Test
+    void hotTicketPurchaseModes() throws InterruptedException {
+        // 預熱
+        run("warmup", ticketId -> ticketService.purchaseTicketAtomic(ticketId, 1L, 1));
+
+        run("樂觀鎖重試", ticketId -> ticketService.purchaseTicketDBOnly(ticketId, 1L, 1));
+        run("悲觀鎖", ticketId -> ticketService.purchaseTicketDBPessimistic(ticketId, 1L, 1));
+        run("單一語句 CTE", ticketId -> ticketService.purchaseTicketAtomic(ticketId, 1L, 1));
+    }
+
+    private void run(String mode, Consumer<Long> purchase) throws InterruptedException {
+        cleanUp();
+        jdbcTemplate.update("""
+                INSERT INTO tickets (id, name, description, price, stock, available_stock, version, created_at, updated_at)
+                VALUES (?, 'benchmark', 'benchmark', 100.00, ?, ?, 0, NOW(), NOW())
+                """, TICKET_ID, STOCK, STOCK);
+
+        long[] latencies = new long[REQUESTS];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger succeeded = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(THREADS);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            pool.execute(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < REQUESTS) {
+                    long begin = System.nanoTime();
+                    try {
+                        purchase.accept(TICKET_ID);
+                        succeeded.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        // 庫存不足或重試用盡，只計入延遲
+                    }
+                    latencies[i] = System.nanoTime() - begin;
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        pool.shutdown();
+
+        Arrays.sort(latencies);
+        long p99 = latencies[(int) (REQUESTS * 0.99) - 1] / 1_000_000;
+        Integer available = jdbcTemplate.queryForObject(
+                "SELECT available_stock FROM tickets WHERE id = ?", Integer.class, TICKET_ID);
+        Integer orders = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM orders WHERE ticket_id = ?", Integer.class, TICKET_ID);
+
+        System.out.printf("📊 %s: %d 請求, 成功 %d, %d ms, %.0f req/sec, p99 %d ms%n",
+                mode, REQUESTS, succeeded.get(), elapsed, REQUESTS * 1000.0 / elapsed, p99);
+        assertEquals(STOCK - available, orders, mode + " 訂單數與扣掉的庫存不一致");
+        assertEquals(succeeded.get(), orders, mode + " 成功數與訂單數不一致");
+    }
+}
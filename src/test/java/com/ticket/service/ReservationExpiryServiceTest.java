@@ -0,0 +1,78 @@
+package com.ticket.service;
+
+import com.ticket.entity.Order;
+import com.ticket.repository.OrderExpiryRepository;
+import com.ticket.repository.OrderExpiryRepository.SettledOrder;
+import com.ticket.service.OrderStatusService.OrderStatusUpdate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 逾時回收：消費者已先成單、狀態記錄已是最終結果、狀態記錄遺失的訂單都經結清腳本扣回在途數量，
+ * 並以資料庫結果補推送；只有真正過期的才歸還庫存
+ */
+class ReservationExpiryServiceTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void settlesEveryOverdueReservationThroughTheScript() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        ZSetOperations<String, String> zSet = mock(ZSetOperations.class);
+        when(redis.opsForZSet()).thenReturn(zSet);
+        // 第一次 pipeline 取期限，第二次取狀態記錄
+        when(redis.executePipelined(any(RedisCallback.class))).thenReturn(
+                List.of(1.0, 1.0, 1.0, 1.0, 1.0),
+                Arrays.asList(
+                        List.of("PENDING", "1", "7", "2"),                      // A：消費者已成單
+                        Arrays.asList(null, null, null, null),                   // B：狀態記錄遺失，資料庫已失敗
+                        List.of("PAID", "1", "7", "1"),                          // C：已推送但沒結清
+                        List.of("PENDING", "1", "8", "3"),                       // D：真正過期
+                        Arrays.asList(null, null, null, null)));                 // E：什麼都沒有
+        InventoryEngine engine = mock(InventoryEngine.class);
+        OrderStatusService statusService = mock(OrderStatusService.class);
+        OrderExpiryRepository repository = mock(OrderExpiryRepository.class);
+        when(repository.insertExpired(anyList())).thenReturn(List.of("D"));
+        when(repository.findSettled(anyList())).thenReturn(List.of(
+                new SettledOrder("A", 1L, 2, Order.OrderStatus.PAID, null),
+                new SettledOrder("B", 1L, 1, Order.OrderStatus.FAILED, "庫存不足")));
+        ReservationExpiryService service = new ReservationExpiryService(redis, mock(RedisService.class), engine,
+                statusService, mock(OrderIdempotencyService.class), repository, new SimpleMeterRegistry(), 100, 64);
+
+        assertEquals(1, service.expire(List.of("A", "B", "C", "D", "E"), 2));
+
+        verify(engine).release("D", 1L, 8L, 3);
+        verify(engine, never()).release(eq("A"), any(), any(), any());
+
+        ArgumentCaptor<List<OrderStatusUpdate>> published = ArgumentCaptor.forClass(List.class);
+        verify(statusService).publish(published.capture());
+        Map<String, Order.OrderStatus> statuses = published.getValue().stream()
+                .collect(Collectors.toMap(OrderStatusUpdate::orderSn, OrderStatusUpdate::status));
+        assertEquals(Map.of("A", Order.OrderStatus.PAID, "B", Order.OrderStatus.FAILED,
+                "D", Order.OrderStatus.EXPIRED), statuses);
+
+        ArgumentCaptor<List<OrderStatusUpdate>> settled = ArgumentCaptor.forClass(List.class);
+        verify(statusService).settle(settled.capture());
+        assertEquals(List.of("C"), settled.getValue().stream().map(OrderStatusUpdate::orderSn).toList());
+
+        // 只有無從得知票券與數量的才直接移出 zset
+        verify(zSet).remove(RedisService.RESERVATION_DEADLINES_KEY, "E");
+    }
+}
@@ -0,0 +1,91 @@
+package com.ticket.service;
+
+import com.ticket.dto.PendingStock;
+import com.ticket.dto.TicketStock;
+import com.ticket.repository.OutboxEventRepository;
+import com.ticket.repository.TicketRepository;
+import com.ticket.service.RedisService.StockSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 對帳：扣除在途數量、加回外寄箱未套用量後才算漂移、連續兩輪相同才修正、從未初始化的票券略過
+ */
+class StockReconcilerTest {
+
+    private TicketRepository ticketRepository;
+    private RedisService redisService;
+    private OutboxEventRepository outboxEventRepository;
+    private StockReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        redisService = mock(RedisService.class);
+        outboxEventRepository = mock(OutboxEventRepository.class);
+        reconciler = new StockReconciler(ticketRepository, redisService, outboxEventRepository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(reconciler, "batchSize", 500);
+        ReflectionTestUtils.setField(reconciler, "repair", true);
+        when(redisService.reconcileStock(any(), anyLong()))
+                .thenAnswer(invocation -> invocation.<Long>getArgument(1));
+    }
+
+    @Test
+    void inflightReservationsAreNotDrift() {
+        when(ticketRepository.findAllStocks()).thenReturn(List.of(new TicketStock(1L, 100, null)));
+        when(redisService.snapshotStocks(anyList())).thenReturn(List.of(new StockSnapshot(1L, "90", "10", "1")));
+
+        reconciler.reconcile();
+        reconciler.reconcile();
+
+        verify(redisService, never()).reconcileStock(any(), anyLong());
+    }
+
+    @Test
+    void repairsOnlyAfterTwoMatchingPasses() {
+        StockSnapshot expiredKey = new StockSnapshot(1L, null, "5", "3");
+        when(ticketRepository.findAllStocks()).thenReturn(List.of(new TicketStock(1L, 100, null)));
+        when(redisService.snapshotStocks(anyList())).thenReturn(List.of(expiredKey));
+
+        assertEquals(0, reconciler.reconcile());
+        assertEquals(1, reconciler.reconcile());
+        verify(redisService).reconcileStock(expiredKey, 95);
+    }
+
+    @Test
+    void pendingOutboxDecrementsAreNotDrift() {
+        // 資料庫已扣 3 張、外寄箱尚未套用到 Redis
+        when(ticketRepository.findAllStocks()).thenReturn(List.of(new TicketStock(1L, 97, null)));
+        when(outboxEventRepository.findPendingStocks()).thenReturn(List.of(new PendingStock(1L, 3L)));
+        when(redisService.snapshotStocks(anyList())).thenReturn(List.of(new StockSnapshot(1L, "100", "0", "1")));
+
+        reconciler.reconcile();
+        reconciler.reconcile();
+
+        verify(redisService, never()).reconcileStock(any(), anyLong());
+    }
+
+    @Test
+    void skipsTicketsNeverInitialized() {
+        when(ticketRepository.findAllStocks()).thenReturn(List.of(new TicketStock(1L, 100, null)));
+        when(redisService.snapshotStocks(anyList())).thenReturn(List.of(new StockSnapshot(1L, null, null, null)));
+
+        reconciler.reconcile();
+        reconciler.reconcile();
+
+        verify(redisService, never()).reconcileStock(any(), anyLong());
+    }
+}
@@ -0,0 +1,83 @@
+package com.ticket.service;
+
+import com.ticket.dto.TicketStock;
+import com.ticket.repository.TicketRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 預熱：以 id 為 keyset 分批載入，完成後才就緒；Redis 失敗時保持未就緒
+ */
+class StockWarmupServiceTest {
+
+    private TicketRepository ticketRepository;
+    private InventoryEngine inventoryEngine;
+    private StockWarmupService service;
+
+    @BeforeEach
+    void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        inventoryEngine = mock(InventoryEngine.class);
+        service = new StockWarmupService(ticketRepository, inventoryEngine, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+        ReflectionTestUtils.setField(service, "lookaheadMinutes", 30L);
+        ReflectionTestUtils.setField(service, "intervalMillis", 60_000L);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        service.stop();
+    }
+
+    @Test
+    void loadsAllChunksBeforeReady() {
+        when(ticketRepository.findWarmupChunk(isNull(), isNull(), any(), any(), eq(2)))
+                .thenReturn(List.of(stock(1L), stock(2L)));
+        when(ticketRepository.findWarmupChunk(eq(2L), isNull(), any(), any(), eq(2)))
+                .thenReturn(List.of(stock(3L)));
+        when(inventoryEngine.warm(anyList())).thenAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+
+        assertFalse(service.isReady());
+        service.run(new DefaultApplicationArguments());
+
+        assertTrue(service.isReady());
+        assertEquals(Status.UP, service.health().getStatus());
+        verify(inventoryEngine).warm(List.of(stock(3L)));
+    }
+
+    @Test
+    void staysOutOfServiceWhenRedisFails() {
+        when(ticketRepository.findWarmupChunk(any(), any(), any(), any(), anyInt()))
+                .thenReturn(List.of(stock(1L)));
+        when(inventoryEngine.warm(anyList())).thenThrow(new RuntimeException("connection refused"));
+
+        service.run(new DefaultApplicationArguments());
+
+        assertFalse(service.isReady());
+        assertEquals(Status.OUT_OF_SERVICE, service.health().getStatus());
+    }
+
+    private static TicketStock stock(Long id) {
+        return new TicketStock(id, 100, null);
+    }
+}
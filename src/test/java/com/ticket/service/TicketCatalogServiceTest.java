@@ -0,0 +1,115 @@
+package com.ticket.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ticket.entity.Ticket;
+import com.ticket.repository.TicketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 目錄快取：版本不變不回源、庫存以 Redis 計數覆蓋、版本遞增後重新載入
+ * Redis 以記憶體 Map 模擬
+ */
+class TicketCatalogServiceTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final Map<String, String> redis = new HashMap<>();
+
+    private TicketRepository ticketRepository;
+    private TicketCatalogService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ticketRepository = mock(TicketRepository.class);
+        when(ticketRepository.findAll()).thenReturn(List.of(ticket(1L, 100), ticket(2L, 50)));
+
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(template.opsForValue()).thenReturn(ops);
+        when(ops.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+        when(ops.multiGet(anyList())).thenAnswer(invocation -> {
+            List<String> values = new ArrayList<>();
+            invocation.<List<String>>getArgument(0).forEach(key -> values.add(redis.get(key)));
+            return values;
+        });
+        when(ops.increment(anyString())).thenAnswer(invocation -> Long.parseLong(
+                redis.merge(invocation.getArgument(0), "1", (a, b) -> String.valueOf(Long.parseLong(a) + 1))));
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(ops).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+
+        service = new TicketCatalogService(ticketRepository, template, objectMapper, 100);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "redisTtlSeconds", 600L);
+    }
+
+    @Test
+    void overlaysRedisStockWithoutReloading() throws Exception {
+        TicketCatalogService.CatalogBody first = service.getAllTickets();
+        assertEquals(100, stockOf(first, 0));
+
+        redis.put("ticket:stock:1", "42");
+        TicketCatalogService.CatalogBody second = service.getAllTickets();
+
+        assertEquals(42, stockOf(second, 0));
+        assertEquals(50, stockOf(second, 1));
+        assertEquals("Ticket 1", objectMapper.readTree(second.json()).get(0).get("name").asText());
+        assertNotEquals(first.etag(), second.etag());
+        verify(ticketRepository, times(1)).findAll();
+    }
+
+    @Test
+    void sameContentKeepsEtag() {
+        assertEquals(service.getAllTickets().etag(), service.getAllTickets().etag());
+    }
+
+    @Test
+    void versionBumpReloadsFromDatabase() {
+        service.getAllTickets();
+        service.invalidate();
+        service.getAllTickets();
+        verify(ticketRepository, times(2)).findAll();
+    }
+
+    private int stockOf(TicketCatalogService.CatalogBody body, int index) throws Exception {
+        JsonNode root = objectMapper.readTree(body.json());
+        return root.get(index).get("availableStock").asInt();
+    }
+
+    private static Ticket ticket(Long id, int stock) {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setName("Ticket " + id);
+        ticket.setPrice(new BigDecimal("1000.00"));
+        ticket.setStock(stock);
+        ticket.setAvailableStock(stock);
+        ticket.setVersion(0);
+        ticket.setSaleStartTime(LocalDateTime.of(2026, 1, 1, 10, 0));
+        return ticket;
+    }
+}
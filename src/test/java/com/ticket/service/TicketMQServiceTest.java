@@ -0,0 +1,76 @@
+package com.ticket.service;
+
+import com.ticket.dto.ReservationResult;
+import com.ticket.util.OrderSnGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 本地引擎預扣成功後補寫 Redis 預扣記錄，寫入失敗就歸還庫存；Redis 引擎由腳本寫入，不重複寫
+ */
+class TicketMQServiceTest {
+
+    private InventoryEngine inventoryEngine;
+    private RedisService redisService;
+    private PurchaseMessagePublisher publisher;
+    private ReservationExpiryService expiryService;
+    private TicketMQService service;
+
+    @BeforeEach
+    void setUp() {
+        inventoryEngine = mock(InventoryEngine.class);
+        redisService = mock(RedisService.class);
+        publisher = mock(PurchaseMessagePublisher.class);
+        expiryService = mock(ReservationExpiryService.class);
+        OrderSnGenerator orderSnGenerator = mock(OrderSnGenerator.class);
+        when(orderSnGenerator.nextSn()).thenReturn("SN1");
+        when(inventoryEngine.reserve(anyString(), anyLong(), anyLong(), anyInt())).thenReturn(ReservationResult.success(9));
+        when(publisher.enqueue(any())).thenReturn(true);
+        service = new TicketMQService(inventoryEngine, redisService, publisher, mock(StockShadowService.class),
+                orderSnGenerator, mock(OrderStatusService.class), expiryService, mock(ReservationJournalService.class));
+    }
+
+    @Test
+    void localEngineRecordsReservationInRedis() {
+        when(inventoryEngine.recordsReservation()).thenReturn(false);
+
+        assertEquals(true, service.purchaseTicketAsync(1L, 7L, 2).get("success"));
+
+        verify(redisService).recordReservation("SN1", 1L, 7L, 2);
+        verify(expiryService).track("SN1");
+    }
+
+    @Test
+    void releasesWhenReservationRecordFails() {
+        when(inventoryEngine.recordsReservation()).thenReturn(false);
+        doThrow(new RuntimeException("connection refused")).when(redisService).recordReservation("SN1", 1L, 7L, 2);
+
+        Map<String, Object> result = service.purchaseTicketAsync(1L, 7L, 2);
+
+        assertEquals("BUSY", result.get("reason"));
+        verify(inventoryEngine).release("SN1", 1L, 7L, 2);
+        verify(publisher, never()).enqueue(any());
+    }
+
+    @Test
+    void redisEngineDoesNotWriteTwice() {
+        when(inventoryEngine.recordsReservation()).thenReturn(true);
+
+        service.purchaseTicketAsync(1L, 7L, 2);
+
+        verify(redisService, never()).recordReservation(anyString(), anyLong(), anyLong(), anyInt());
+    }
+}
@@ -0,0 +1,57 @@
+package com.ticket.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ticket.dto.TicketListQuery;
+import com.ticket.dto.TicketSummary;
+import com.ticket.repository.TicketRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * keyset 分頁輸出：多查的那一筆不輸出，只用來判斷 nextCursor
+ */
+class TicketServicePageTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Test
+    void nextCursorPointsToLastWrittenRow() throws Exception {
+        JsonNode page = writePage(3, 5);
+        assertEquals(3, page.get("items").size());
+        assertEquals(3, page.get("nextCursor").asLong());
+        assertEquals("Ticket 1", page.get("items").get(0).get("name").asText());
+    }
+
+    @Test
+    void lastPageHasNullCursor() throws Exception {
+        JsonNode page = writePage(3, 2);
+        assertEquals(2, page.get("items").size());
+        assertTrue(page.get("nextCursor").isNull());
+    }
+
+    private JsonNode writePage(int size, int available) throws Exception {
+        TicketRepository repository = mock(TicketRepository.class);
+        when(repository.streamSummaries(any(), anyInt())).thenAnswer(invocation -> LongStream
+                .rangeClosed(1, Math.min(available, invocation.<Integer>getArgument(1)))
+                .mapToObj(id -> new TicketSummary(id, "Ticket " + id, BigDecimal.TEN, 100,
+                        LocalDateTime.of(2026, 1, 1, 10, 0), null)));
+
+        TicketService service = new TicketService(repository, null, null, null, null, null, null, objectMapper);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.writeTicketPage(new TicketListQuery(null, size, null, null, null, null, false, LocalDateTime.now()), out);
+        return objectMapper.readTree(out.toByteArray());
+    }
+}
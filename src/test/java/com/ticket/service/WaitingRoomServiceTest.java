@@ -0,0 +1,85 @@
+package com.ticket.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 等候室：放行後取得的憑證只對同一票券、同一用戶有效，竄改或過期即失效；
+ * 庫存與售罄一律經庫存引擎讀取（本地引擎的計數不在 Redis）
+ */
+class WaitingRoomServiceTest {
+
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    private final InventoryEngine inventoryEngine = mock(InventoryEngine.class);
+    private final WaitingRoomService service =
+            new WaitingRoomService(redis, inventoryEngine, new SimpleMeterRegistry(), "test-secret");
+
+    @Test
+    void admittedUserGetsTokenBoundToTicketAndUser() {
+        double expiresAt = System.currentTimeMillis() / 1000 + 60;
+        when(redis.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(expiresAt, null));
+
+        Map<String, Object> status = service.status(1L, "alice");
+        String token = (String) status.get("admissionToken");
+
+        assertEquals("admitted", status.get("status"));
+        assertTrue(service.verify(1L, "alice", token));
+        assertFalse(service.verify(2L, "alice", token));
+        assertFalse(service.verify(1L, "bob", token));
+        assertFalse(service.verify(1L, "alice", token.substring(0, token.length() - 1) + "x"));
+    }
+
+    @Test
+    void expiredOrMalformedTokenIsRejected() {
+        long past = System.currentTimeMillis() / 1000 - 1;
+        assertFalse(service.verify(1L, "alice", past + ".abc"));
+        assertFalse(service.verify(1L, "alice", "not-a-token"));
+        assertFalse(service.verify(1L, "alice", null));
+    }
+
+    @Test
+    void waitingUserSeesPosition() {
+        when(redis.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(null, 41L));
+
+        Map<String, Object> status = service.status(1L, "alice");
+
+        assertEquals("waiting", status.get("status"));
+        assertEquals(42L, status.get("position"));
+    }
+
+    @Test
+    void soldOutComesFromInventoryEngine() {
+        when(redis.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(null, 41L));
+        when(inventoryEngine.isSoldOut(1L)).thenReturn(true);
+
+        assertEquals("sold_out", service.status(1L, "alice").get("status"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void admissionStopsWhenEngineStockIsGone() {
+        when(inventoryEngine.getStock(1L)).thenReturn(0);
+
+        service.admit(1L, 10);
+
+        verify(redis).execute(any(RedisScript.class), anyList(), anyString(), anyString(), anyString(),
+                anyString(), anyString(), eq("0"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.ticket.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalTimingWheelTest {
+
+    private static final long TICK = 10;
+    private static final int WHEEL_SIZE = 8;   // 第 0 層 80ms，第 1 層 640ms，第 2 層 5120ms
+
+    @Test
+    void firesEveryEntryWithinOneTickAfterDeadline() {
+        long start = 1_000_003;
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, start);
+        Random random = new Random(42);
+
+        Map<Integer, Long> deadlines = new HashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            long deadline = start + TICK + random.nextInt(20_000);
+            if (wheel.add(i, deadline)) {
+                deadlines.put(i, deadline);
+            }
+        }
+        assertEquals(deadlines.size(), wheel.size());
+
+        Map<Integer, Long> firedAt = new HashMap<>();
+        for (long now = start; now <= start + 25_000; now += 3) {
+            long time = now;
+            wheel.advance(time, item -> firedAt.put(item, time));
+        }
+
+        assertEquals(deadlines.size(), firedAt.size());
+        assertEquals(0, wheel.size());
+        deadlines.forEach((item, deadline) -> {
+            long fired = firedAt.get(item);
+            assertTrue(fired >= deadline, "早觸發: " + item);
+            assertTrue(fired < deadline + 2 * TICK, "晚太多: " + item + " deadline=" + deadline + " fired=" + fired);
+        });
+    }
+
+    @Test
+    void pastDeadlineIsRejected() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, 1000);
+        assertFalse(wheel.add("late", 990));
+        assertTrue(wheel.add("next", 1001));
+    }
+
+    @Test
+    void largeClockJumpFlushesEverything() {
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, 0);
+        for (int i = 1; i <= 100; i++) {
+            wheel.add(i, i * 1_000L);
+        }
+        int[] fired = {0};
+        wheel.advance(200_000, item -> fired[0]++);
+        assertEquals(100, fired[0]);
+    }
+}
@@ -0,0 +1,48 @@
+package com.ticket.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 庫存日誌：寫檔失敗時緩衝區的紀錄保留，下一次 flush 寫出
+ */
+class InventoryJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void failedWriteKeepsBufferedRecords() throws Exception {
+        Path path = dir.resolve("inventory.journal");
+        InventoryJournal journal = new InventoryJournal(path, 16);
+        journal.append(InventoryJournal.SET, 1L, 0, 0, 100, null);
+        journal.append(InventoryJournal.RESERVE, 1L, 7L, 2, 0, "T1");
+
+        // 模擬磁碟錯誤：換成已關閉的 channel
+        FileChannel closed = FileChannel.open(path, StandardOpenOption.WRITE);
+        closed.close();
+        FileChannel original = (FileChannel) ReflectionTestUtils.getField(journal, "channel");
+        ReflectionTestUtils.setField(journal, "channel", closed);
+        assertThrows(IllegalStateException.class, journal::flush);
+
+        // 恢復後重試，兩筆紀錄都寫出
+        ReflectionTestUtils.setField(journal, "channel", original);
+        journal.append(InventoryJournal.RESERVE, 1L, 8L, 1, 0, "T2");
+        journal.flush();
+
+        List<String> replayed = new ArrayList<>();
+        journal.replay(record -> replayed.add(record.type() + ":" + record.orderSn()));
+        journal.close();
+        assertEquals(List.of("1:null", "2:T1", "2:T2"), replayed);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ticket.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 訂單號生成：舊版 UUID 方案 vs OrderSnGenerator
+ * mvn -Pbenchmark test -Djmh.include=OrderSnGeneratorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderSnGeneratorBenchmark {
+
+    private final OrderSnGenerator generator = new OrderSnGenerator(1);
+
+    @Benchmark
+    public String uuid() {
+        return "T" + UUID.randomUUID().toString().replace("-", "");
+    }
+
+    @Benchmark
+    public String snowflake() {
+        return generator.nextSn();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String uuidContended() {
+        return uuid();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String snowflakeContended() {
+        return generator.nextSn();
+    }
+}
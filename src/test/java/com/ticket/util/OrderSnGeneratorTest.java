@@ -0,0 +1,83 @@
+package com.ticket.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderSnGeneratorTest {
+
+    private static final int THREADS = 16;
+    private static final int IDS_PER_THREAD = 100_000;
+
+    @Test
+    void noDuplicatesAcrossThreads() throws Exception {
+        OrderSnGenerator generator = new OrderSnGenerator(1);
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                long previous = Long.MIN_VALUE;
+                boolean monotonic = true;
+                for (int i = 0; i < IDS_PER_THREAD; i++) {
+                    long id = generator.nextId();
+                    monotonic &= id > previous;
+                    previous = id;
+                    seen.add(OrderSnGenerator.encode(id));
+                }
+                return monotonic;
+            }));
+        }
+        start.countDown();
+
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get(), "同一執行緒內 ID 必須遞增");
+        }
+        pool.shutdown();
+
+        assertEquals(THREADS * IDS_PER_THREAD, seen.size());
+    }
+
+    @Test
+    void encodedSnSortsLikeId() {
+        OrderSnGenerator generator = new OrderSnGenerator(7);
+        String previous = generator.nextSn();
+        for (int i = 0; i < 10_000; i++) {
+            String current = generator.nextSn();
+            assertEquals(14, current.length());
+            assertTrue(current.compareTo(previous) > 0);
+            previous = current;
+        }
+    }
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        OrderSnGenerator generator = new OrderSnGenerator(1023);
+        for (int i = 0; i < 1_000; i++) {
+            long id = generator.nextId();
+            assertEquals(id, OrderSnGenerator.decode(OrderSnGenerator.encode(id)));
+        }
+        assertEquals(Long.MAX_VALUE, OrderSnGenerator.decode(OrderSnGenerator.encode(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void rejectsInvalidInput() {
+        assertThrows(IllegalArgumentException.class, () -> new OrderSnGenerator(1024));
+        assertThrows(IllegalArgumentException.class, () -> OrderSnGenerator.decode("T123"));
+        assertThrows(IllegalArgumentException.class, () -> OrderSnGenerator.decode("TUUUUUUUUUUUUU"));
+    }
+}
@@ -0,0 +1,74 @@
+package com.ticket.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 預扣紀錄日誌：每筆預扣的寫入延遲（登記 + 確認各寫一筆，含換段；落盤由背景執行緒負責，不計入）
+ * mvn -Pbenchmark test -Djmh.include=ReservationJournalBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReservationJournalBenchmark {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private ReservationJournal journal;
+    private volatile boolean running;
+    private Thread flusher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        journal = ReservationJournal.open(Files.createTempDirectory("reservation-bench"), 262_144).journal();
+        running = true;
+        flusher = new Thread(() -> {
+            while (running) {
+                try {
+                    Thread.sleep(10);
+                    journal.flush();
+                } catch (Exception e) {
+                    running = false;
+                }
+            }
+        });
+        flusher.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        running = false;
+        flusher.join();
+        journal.close();
+    }
+
+    @Benchmark
+    public boolean reserveAndAcknowledge() {
+        String orderSn = "T" + sequence.incrementAndGet();
+        journal.reserve(orderSn, 1L, 1L, 1, 0L);
+        return journal.resolve(orderSn, ReservationJournal.ACKNOWLEDGED);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean reserveAndAcknowledgeContended() {
+        return reserveAndAcknowledge();
+    }
+}
@@ -0,0 +1,126 @@
+package com.ticket.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 預扣紀錄日誌：重啟後只剩未確認的預扣、寫滿換段且有結果的舊段會被刪除（更舊的段仍有未確認預扣時保留）、併發寫入不會遺失紀錄
+ */
+class ReservationJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void onlyUnresolvedReservationsSurviveRestart() throws Exception {
+        ReservationJournal journal = ReservationJournal.open(dir, 1024).journal();
+        journal.reserve("T1", 1L, 7L, 2, 1000L);
+        journal.reserve("T2", 1L, 8L, 1, 1001L);
+        journal.reserve("T3", 1L, 9L, 1, 1002L);
+        journal.resolve("T2", ReservationJournal.ACKNOWLEDGED);
+        journal.resolve("T3", ReservationJournal.RELEASED);
+        journal.close();
+
+        ReservationJournal.Recovery recovery = ReservationJournal.open(dir, 1024);
+
+        assertEquals(List.of(new ReservationJournal.Entry("T1", 1L, 7L, 2, 1000L)), List.copyOf(recovery.unresolved()));
+        assertEquals(1, segmentFiles());
+
+        // 重發後確認，再次重啟就沒有未確認的預扣
+        recovery.journal().resolve("T1", ReservationJournal.ACKNOWLEDGED);
+        recovery.journal().close();
+        assertTrue(ReservationJournal.open(dir, 1024).unresolved().isEmpty());
+    }
+
+    @Test
+    void rotatesAndDeletesResolvedSegments() throws Exception {
+        ReservationJournal journal = ReservationJournal.open(dir, 4).journal();
+        for (int i = 0; i < 10; i++) {
+            journal.reserve("T" + i, 1L, i, 1, i);
+            journal.resolve("T" + i, ReservationJournal.ACKNOWLEDGED);
+        }
+        journal.reserve("KEEP", 1L, 1L, 1, 0L);
+        assertTrue(journal.segmentCount() > 1);
+
+        journal.flush();
+
+        assertEquals(1, journal.segmentCount());
+        assertEquals(1, segmentFiles());
+        journal.close();
+        assertEquals("KEEP", ReservationJournal.open(dir, 4).unresolved().iterator().next().orderSn());
+    }
+
+    @Test
+    void keepsResolveSegmentsWhileOlderReservationsAreOpen() throws Exception {
+        ReservationJournal journal = ReservationJournal.open(dir, 4).journal();
+        // 第 0 段：A1..A4 預扣
+        for (int i = 1; i <= 4; i++) {
+            journal.reserve("A" + i, 1L, i, 1, i);
+        }
+        // 第 1 段：A1..A3 確認 + B1 預扣；B1 的確認落在第 2 段，第 1 段已無未確認的預扣
+        for (int i = 1; i <= 3; i++) {
+            journal.resolve("A" + i, ReservationJournal.ACKNOWLEDGED);
+        }
+        journal.reserve("B1", 1L, 9L, 1, 9L);
+        journal.resolve("B1", ReservationJournal.ACKNOWLEDGED);
+
+        // 第 0 段還有 A4，第 1 段的確認紀錄不能刪
+        assertEquals(0, journal.flush());
+        journal.close();
+
+        ReservationJournal.Recovery recovery = ReservationJournal.open(dir, 4);
+        assertEquals(List.of("A4"), recovery.unresolved().stream().map(ReservationJournal.Entry::orderSn).toList());
+
+        recovery.journal().resolve("A4", ReservationJournal.ACKNOWLEDGED);
+        recovery.journal().close();
+        assertTrue(ReservationJournal.open(dir, 4).unresolved().isEmpty());
+    }
+
+    @Test
+    void concurrentAppendsAcrossRotationsAreNotLost() throws Exception {
+        ReservationJournal journal = ReservationJournal.open(dir, 256).journal();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        String orderSn = "T" + thread + "-" + i;
+                        journal.reserve(orderSn, 1L, thread, 1, i);
+                        if (i % 2 == 0) {
+                            journal.resolve(orderSn, ReservationJournal.ACKNOWLEDGED);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(4000, journal.outstandingCount());
+        journal.close();
+
+        assertEquals(4000, ReservationJournal.open(dir, 256).unresolved().size());
+    }
+
+    private long segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.ticket.util;
+
+import com.ticket.dto.TicketPurchaseMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息編解碼：Jackson vs 定長二進位
+ * 每則消息的配置量請加上 GC profiler:
+ * mvn -Pbenchmark test -Djmh.include="TicketMessageConverterBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TicketMessageConverterBenchmark {
+
+    private final Jackson2JsonMessageConverter jsonConverter = new Jackson2JsonMessageConverter();
+    private final TicketMessageConverter binaryConverter = new TicketMessageConverter();
+
+    private TicketPurchaseMessage payload;
+    private Message jsonMessage;
+    private Message binaryMessage;
+
+    @Setup
+    public void setUp() {
+        payload = new TicketPurchaseMessage(new OrderSnGenerator(1).nextSn(), 1L, 12345L, 2);
+        jsonMessage = jsonConverter.toMessage(payload, new MessageProperties());
+        binaryMessage = binaryConverter.toMessage(payload, new MessageProperties());
+        System.out.println("JSON " + jsonMessage.getBody().length + " bytes, binary " + binaryMessage.getBody().length + " bytes");
+    }
+
+    @Benchmark
+    public Message jsonEncode() {
+        return jsonConverter.toMessage(payload, new MessageProperties());
+    }
+
+    @Benchmark
+    public Message binaryEncode() {
+        return binaryConverter.toMessage(payload, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object jsonDecode() {
+        return jsonConverter.fromMessage(jsonMessage);
+    }
+
+    @Benchmark
+    public Object binaryDecode() {
+        return binaryConverter.fromMessage(binaryMessage);
+    }
+}
@@ -0,0 +1,75 @@
+package com.ticket.util;
+
+import com.ticket.dto.TicketPurchaseMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TicketMessageConverterTest {
+
+    private final TicketMessageConverter converter = new TicketMessageConverter();
+
+    @Test
+    void roundTripPackedOrderSn() {
+        String orderSn = new OrderSnGenerator(3).nextSn();
+        Message message = converter.toMessage(new TicketPurchaseMessage(orderSn, 42L, 7L, 2), new MessageProperties());
+
+        assertEquals(TicketMessageConverter.CONTENT_TYPE, message.getMessageProperties().getContentType());
+        assertEquals(29, message.getBody().length);
+        assertSame(new TicketPurchaseMessage(orderSn, 42L, 7L, 2), converter.fromMessage(message));
+    }
+
+    @Test
+    void roundTripLegacyOrderSn() {
+        String orderSn = "T" + "0123456789abcdef0123456789abcdef";
+        Message message = converter.toMessage(new TicketPurchaseMessage(orderSn, 1L, 1L, 1), new MessageProperties());
+
+        assertSame(new TicketPurchaseMessage(orderSn, 1L, 1L, 1), converter.fromMessage(message));
+    }
+
+    @Test
+    void readsJsonMessagesStillInQueue() {
+        TicketPurchaseMessage original = new TicketPurchaseMessage("T123", 5L, 6L, 1);
+        Message json = new Jackson2JsonMessageConverter().toMessage(original, new MessageProperties());
+
+        assertSame(original, converter.fromMessage(json));
+    }
+
+    @Test
+    void rejectsTruncatedOrUnknownVersion() {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(TicketMessageConverter.CONTENT_TYPE);
+        assertThrows(MessageConversionException.class, () -> converter.fromMessage(new Message(new byte[5], properties)));
+
+        MessageProperties future = new MessageProperties();
+        future.setContentType("application/x-ticket-purchase;v=2");
+        assertThrows(MessageConversionException.class, () -> converter.fromMessage(new Message(new byte[29], future)));
+    }
+
+    @Test
+    void rejectsCorruptOrderSnLength() {
+        byte[] body = TicketMessageConverter.encode(new TicketPurchaseMessage("T123", 1L, 1L, 1));
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(TicketMessageConverter.CONTENT_TYPE);
+
+        // 長度欄位在固定欄位之後：負數與超過剩餘內容都要轉成 MessageConversionException
+        body[21] = (byte) 0x80;
+        assertThrows(MessageConversionException.class, () -> converter.fromMessage(new Message(body, properties)));
+        body[21] = 0x7f;
+        assertThrows(MessageConversionException.class, () -> converter.fromMessage(new Message(body, properties)));
+    }
+
+    private static void assertSame(TicketPurchaseMessage expected, Object actual) {
+        TicketPurchaseMessage message = assertInstanceOf(TicketPurchaseMessage.class, actual);
+        assertEquals(expected.getOrderSn(), message.getOrderSn());
+        assertEquals(expected.getTicketId(), message.getTicketId());
+        assertEquals(expected.getUserId(), message.getUserId());
+        assertEquals(expected.getQuantity(), message.getQuantity());
+    }
+}
@@ -1,13 +1,13 @@
 #!/bin/bash
 
 # 參數
-MODE=$1          # db / async
+MODE=$1          # db / db-pessimistic / db-atomic / async
 STOCK=$2         # 初始庫存
 REQUESTS=$3      # 總請求數
 CONCURRENCY=$4   # 併發數
 
 if [ -z "$MODE" ] || [ -z "$STOCK" ] || [ -z "$REQUESTS" ] || [ -z "$CONCURRENCY" ]; then
-  echo "用法: $0 [db|async] [stock數量] [request數量] [concurrency數量]"
+  echo "用法: $0 [db|db-pessimistic|db-atomic|async] [stock數量] [request數量] [concurrency數量]"
   exit 1
 fi
 
@@ -39,6 +39,7 @@ VALUES
 
 if [ "$MODE" = "async" ]; then
   echo "初始化 Redis..."
+  docker exec ticket-redis redis-cli DEL "ticket:soldout:1" "ticket:purchased:1" "ticket:inflight:1" > /dev/null
   docker exec ticket-redis redis-cli SET "ticket:stock:1" $STOCK > /dev/null
 fi
 
@@ -62,6 +63,20 @@ if [ "$MODE" = "db" ]; then
     -m POST \
     -d '{}' \
     "http://localhost:8080/api/tickets/1/purchase-db-only?quantity=1"
+elif [ "$MODE" = "db-pessimistic" ]; then
+  hey -n $REQUESTS -c $CONCURRENCY \
+    -H "Authorization: Bearer $TOKEN" \
+    -H "Content-Type: application/json" \
+    -m POST \
+    -d '{}' \
+    "http://localhost:8080/api/tickets/1/purchase-db-pessimistic?quantity=1"
+elif [ "$MODE" = "db-atomic" ]; then
+  hey -n $REQUESTS -c $CONCURRENCY \
+    -H "Authorization: Bearer $TOKEN" \
+    -H "Content-Type: application/json" \
+    -m POST \
+    -d '{}' \
+    "http://localhost:8080/api/tickets/1/purchase-db-atomic?quantity=1"
 else
   hey -n $REQUESTS -c $CONCURRENCY \
     -H "Authorization: Bearer $TOKEN" \